@@ -0,0 +1,99 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONReader;
+import com.hikarukimi.taimountain.util.PayloadEnvelope;
+import com.hikarukimi.taimountain.util.RegexUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从包装格式中取出 JSON 并解析：PayloadEnvelope 在原始字节上定位，与解码为字符串后用 RegexUtil 提取的对比。
+ * <ul>
+ *     <li>var：d1.weather.com.cn 的实况响应 'var dataSK = {...};'（约 0.5 KB）；</li>
+ *     <li>script：把 MSN 预报响应嵌在 &lt;script type="application/json"&gt; 中（约 300 KB），
+ *     衡量响应体较大时逐字节扫描与正则匹配的差距。</li>
+ * </ul>
+ *
+ * @author Hikarukimi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnvelopeBenchmark {
+
+    private static final String SCRIPT_TYPE = "application/json";
+
+    @Param({"var", "script"})
+    private String format;
+
+    private byte[] body;
+
+    private PayloadEnvelope envelope;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("var".equals(format)) {
+            body = Payloads.bytes(Payloads.WEATHER_COM_BASIC);
+            envelope = PayloadEnvelope.VAR_ASSIGNMENT;
+        } else {
+            String json = new String(Payloads.bytes(Payloads.MSN_OVERVIEW), StandardCharsets.UTF_8);
+            body = ("<html><head><script type=\"" + SCRIPT_TYPE + "\">" + json + "</script></head></html>")
+                    .getBytes(StandardCharsets.UTF_8);
+            envelope = PayloadEnvelope.scriptTag(SCRIPT_TYPE);
+        }
+    }
+
+    @Benchmark
+    public JSONObject envelopeBytes() {
+        try (JSONReader reader = JSONReader.of(envelope.unwrap(ByteBuffer.wrap(body)), StandardCharsets.UTF_8)) {
+            return reader.read(JSONObject.class);
+        }
+    }
+
+    @Benchmark
+    public JSONObject regexString() {
+        String input = new String(body, StandardCharsets.UTF_8);
+        String json = "var".equals(format)
+                ? RegexUtil.extractJsonFromVarParameter(input)
+                : RegexUtil.extractJsonFromHtmlTag(input);
+        return JSON.parseObject(json);
+    }
+
+    /**
+     * 只定位 JSON 区间，不解析。
+     */
+    @Benchmark
+    public ByteBuffer unwrapOnly() {
+        return envelope.unwrap(ByteBuffer.wrap(body));
+    }
+
+    /**
+     * 只用正则表达式提取 JSON 字符串，不解析，包含解码。
+     */
+    @Benchmark
+    public String regexOnly() {
+        String input = new String(body, StandardCharsets.UTF_8);
+        return "var".equals(format)
+                ? RegexUtil.extractJsonFromVarParameter(input)
+                : RegexUtil.extractJsonFromHtmlTag(input);
+    }
+}
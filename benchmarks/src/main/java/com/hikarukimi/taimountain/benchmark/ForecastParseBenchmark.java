@@ -0,0 +1,112 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONPath;
+import com.alibaba.fastjson2.JSONReader;
+import com.hikarukimi.taimountain.entity.CurrentWeather;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.entity.WeatherForecast;
+import com.hikarukimi.taimountain.entity.WeatherWarning;
+import com.hikarukimi.taimountain.util.MsnOverviewParser;
+import com.hikarukimi.taimountain.util.PayloadEnvelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析一次 MSN 预报响应（WeatherService.getForecast 未命中缓存时的解析阶段）。
+ * <ul>
+ *     <li>streamingBytes：当前实现，在响应字节上用 MsnOverviewParser 单次流式解析；</li>
+ *     <li>streamingString：先解码为字符串再流式解析，衡量省去解码的收益；</li>
+ *     <li>legacyJsonPath：最初的实现，用 JSONPath 逐段提取，每个小时重新序列化再反序列化。</li>
+ * </ul>
+ * 输入为原始字节，解码、解析和危险天气判定都计入测量。
+ *
+ * @author Hikarukimi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastParseBenchmark {
+
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        body = Payloads.bytes(Payloads.MSN_OVERVIEW);
+    }
+
+    @Benchmark
+    public ForecastData streamingBytes() {
+        ByteBuffer json = PayloadEnvelope.JSON.unwrap(ByteBuffer.wrap(body));
+        try (JSONReader reader = JSONReader.of(json, StandardCharsets.UTF_8)) {
+            return MsnOverviewParser.parse(reader);
+        }
+    }
+
+    @Benchmark
+    public ForecastData streamingString() {
+        return MsnOverviewParser.parse(new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> legacyJsonPath() {
+        String responseBody = new String(body, StandardCharsets.UTF_8);
+        Map<String, Object> resultHashMap = new HashMap<>();
+
+        Object weather = JSONPath.eval(responseBody, "$.responses[0].weather");
+        String currentString = JSON.toJSONString(JSONPath.eval(weather, "$[0].current"));
+        Object comment = JSONPath.eval(weather, "$[0].alerts.safetyGuide[0]");
+        // 最初的实现直接强转为 WeatherWarning 列表，有预警时会抛出 ClassCastException，这里按类型转换
+        Object alerts = JSONPath.eval(weather, "$[0].alerts");
+        List<WeatherWarning> thunder = alerts == null
+                ? null : JSON.parseArray(JSON.toJSONString(alerts), WeatherWarning.class);
+        CurrentWeather currentWeather = JSON.parseObject(currentString, CurrentWeather.class);
+
+        List<List<?>> forecastString = (List<List<?>>) JSONPath.eval(weather, "$[0].forecast.days..hourly[*]");
+        List<String> forecastSunSet = (List<String>) JSONPath.eval(weather, "$[0].forecast.days[*].almanac.sunset");
+        List<String> forecastSunRise = (List<String>) JSONPath.eval(weather, "$[0].forecast.days[*].almanac.sunrise");
+        List<WeatherForecast> forecastList = new ArrayList<>();
+
+        double rainAmount = 0.0;
+        for (int i = 0; i < forecastString.size(); i++) {
+            for (int j = 0; j < forecastString.get(i).size(); j++) {
+                String forecast = JSON.toJSONString(forecastString.get(i).get(j));
+                WeatherForecast weatherForecast = JSON.parseObject(forecast, WeatherForecast.class);
+                weatherForecast.setSunset(forecastSunSet.get(i));
+                weatherForecast.setSunrise(forecastSunRise.get(i));
+                weatherForecast.buildOwn();
+                rainAmount += weatherForecast.getRainAmount();
+                forecastList.add(weatherForecast);
+            }
+        }
+
+        resultHashMap.put("current", currentWeather);
+        currentWeather.setRainAmount(rainAmount);
+        currentWeather.buildOwn();
+        currentWeather.setComment(comment != null ? comment.toString() : null);
+        currentWeather.buildComment(thunder);
+        resultHashMap.put("forecast", forecastList);
+        return resultHashMap;
+    }
+}
@@ -0,0 +1,87 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import com.alibaba.fastjson2.JSON;
+import com.hikarukimi.taimountain.service.Frame;
+import com.hikarukimi.taimountain.util.MsnOverviewParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * 一次推送中压缩完整预报帧的 CPU 开销：每个会话各自压缩（permessage-deflate 的做法）
+ * 与每帧只压缩一次、所有会话共享压缩结果的对比。
+ * <p>
+ * 每个会话各自压缩时使用容器默认的压缩级别，并且每帧重置上下文（no context takeover）。
+ * 两种方式都只序列化一次 JSON，测量结果不包含网络写入。
+ *
+ * @author Hikarukimi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FrameCompressionBenchmark {
+
+    @Param({"1000", "10000"})
+    private int sessions;
+
+    private Map<String, Object> payload;
+
+    private Deflater deflater;
+
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payload = MsnOverviewParser.parse(new String(Payloads.bytes(Payloads.MSN_OVERVIEW), StandardCharsets.UTF_8)).toMap();
+        deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        buffer = new byte[64 * 1024];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deflater.end();
+    }
+
+    @Benchmark
+    public void perSessionDeflate(Blackhole blackhole) {
+        byte[] text = JSON.toJSONString(payload).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < sessions; i++) {
+            deflater.reset();
+            deflater.setInput(text);
+            deflater.finish();
+            int compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            blackhole.consume(compressed);
+        }
+    }
+
+    @Benchmark
+    public void sharedDeflate(Blackhole blackhole) {
+        byte[] compressed = new Frame(payload).getDeflatedText();
+        for (int i = 0; i < sessions; i++) {
+            blackhole.consume(ByteBuffer.wrap(compressed));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import com.hikarukimi.taimountain.entity.WeatherForecast;
+import com.hikarukimi.taimountain.util.HazardEngine;
+import com.hikarukimi.taimountain.util.HazardMasks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 危险天气判定：逐对象调用 buildOwn 与 HazardEngine 批量判定（标量、Vector API）的对比。
+ * <p>
+ * 每个地点 240 个小时，数据按山区冬季的取值范围随机生成，使各判定条件都有一定比例成立。
+ * batchVector 需要主工程以 mvn -Pvector install -DskipTests 安装，否则该基准直接失败，其余基准不受影响。
+ *
+ * @author Hikarukimi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class HazardBenchmark {
+
+    private static final int HOURS = 240;
+
+    @Param({"1000", "5000"})
+    private int locations;
+
+    private double[][] temp;
+    private double[][] rh;
+    private double[][] dewPt;
+    private double[][] windSpd;
+    private double[][] cloudCover;
+    private double[][] rainAmount;
+
+    private WeatherForecast[][] rows;
+
+    private HazardMasks[] masks;
+
+    private HazardEngine vector;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        temp = new double[locations][HOURS];
+        rh = new double[locations][HOURS];
+        dewPt = new double[locations][HOURS];
+        windSpd = new double[locations][HOURS];
+        cloudCover = new double[locations][HOURS];
+        rainAmount = new double[locations][HOURS];
+        rows = new WeatherForecast[locations][HOURS];
+        masks = new HazardMasks[locations];
+        for (int l = 0; l < locations; l++) {
+            masks[l] = new HazardMasks(HOURS);
+            for (int h = 0; h < HOURS; h++) {
+                temp[l][h] = -15 + random.nextDouble() * 25;
+                rh[l][h] = 40 + random.nextDouble() * 60;
+                dewPt[l][h] = temp[l][h] - 4 + random.nextDouble() * 5;
+                windSpd[l][h] = random.nextDouble() * 20;
+                cloudCover[l][h] = random.nextDouble() * 100;
+                rainAmount[l][h] = random.nextDouble() < 0.7 ? 0 : random.nextDouble() * 15;
+
+                WeatherForecast row = new WeatherForecast();
+                row.setTemp(temp[l][h]);
+                row.setRh(rh[l][h]);
+                row.setDewPt(dewPt[l][h]);
+                row.setWindSpd(windSpd[l][h]);
+                row.setCloudCover(cloudCover[l][h]);
+                row.setRainAmount(rainAmount[l][h]);
+                rows[l][h] = row;
+            }
+        }
+        vector = HazardEngine.isVectorAvailable() ? HazardEngine.vector() : null;
+    }
+
+    @Benchmark
+    public void perRowBuildOwn(Blackhole blackhole) {
+        for (WeatherForecast[] location : rows) {
+            for (WeatherForecast row : location) {
+                row.buildOwn();
+            }
+            blackhole.consume(location);
+        }
+    }
+
+    @Benchmark
+    public void batchScalar(Blackhole blackhole) {
+        evaluate(HazardEngine.scalar(), blackhole);
+    }
+
+    @Benchmark
+    public void batchVector(Blackhole blackhole) {
+        if (vector == null) {
+            throw new IllegalStateException("The vector hazard engine is not available, install the main project with -Pvector.");
+        }
+        evaluate(vector, blackhole);
+    }
+
+    private void evaluate(HazardEngine engine, Blackhole blackhole) {
+        for (int l = 0; l < locations; l++) {
+            engine.evaluate(temp[l], rh[l], dewPt[l], windSpd[l], cloudCover[l], rainAmount[l], HOURS, masks[l]);
+            blackhole.consume(masks[l]);
+        }
+    }
+}
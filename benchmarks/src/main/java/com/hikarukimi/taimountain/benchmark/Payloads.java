@@ -0,0 +1,36 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 录制的上游响应，所有基准测试共用。
+ * <ul>
+ *     <li>msn-overview.json：api.msn.cn 的 weather/overview 响应（10 天、240 个小时）；</li>
+ *     <li>weather-com-basic.html：d1.weather.com.cn 的实况响应，形如 'var dataSK = {...};'。</li>
+ * </ul>
+ *
+ * @author Hikarukimi
+ */
+final class Payloads {
+
+    static final String MSN_OVERVIEW = "/msn-overview.json";
+
+    static final String WEATHER_COM_BASIC = "/weather-com-basic.html";
+
+    private Payloads() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    static byte[] bytes(String name) {
+        try (InputStream in = Payloads.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.hikarukimi.taimountain.benchmark;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import com.hikarukimi.taimountain.entity.CurrentWeather;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * fastjson2 序列化 CurrentWeather 和完整预报（接口和 WebSocket 完整帧的 {current, forecast} 结构）。
+ * <p>
+ * forecast 为 ForecastColumns 列式存储；legacyRows 为最初每小时一个 WeatherForecast 对象的结构，输出内容相同。
+ *
+ * @author Hikarukimi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private CurrentWeather current;
+
+    private Map<String, Object> forecast;
+
+    private Map<String, Object> legacyRows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ForecastParseBenchmark parse = new ForecastParseBenchmark();
+        parse.setUp();
+        ForecastData data = parse.streamingBytes();
+        current = data.getCurrent();
+        forecast = data.toMap();
+        legacyRows = parse.legacyJsonPath();
+    }
+
+    @Benchmark
+    public String currentText() {
+        return JSON.toJSONString(current);
+    }
+
+    @Benchmark
+    public byte[] currentUtf8() {
+        return JSON.toJSONBytes(current);
+    }
+
+    @Benchmark
+    public String forecastText() {
+        return JSON.toJSONString(forecast);
+    }
+
+    @Benchmark
+    public byte[] forecastUtf8() {
+        return JSON.toJSONBytes(forecast);
+    }
+
+    @Benchmark
+    public byte[] forecastJsonb() {
+        return JSONB.toBytes(forecast, JSONWriter.Feature.WriteNameAsSymbol);
+    }
+
+    @Benchmark
+    public String legacyRowsText() {
+        return JSON.toJSONString(legacyRows);
+    }
+}
@@ -0,0 +1,215 @@
+package com.hikarukimi.taimountain.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 作为子进程启动的被测应用，并通过 /proc 和 jcmd 采集其 CPU、RSS 和堆使用量。
+ *
+ * @author Hikarukimi
+ */
+class AppProcess {
+
+    /**
+     * Linux 的 USER_HZ 固定为 100。
+     */
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final Pattern HEAP_USED = Pattern.compile("used (\\d+)K");
+
+    private final Process process;
+
+    private final int port;
+
+    private final Path log;
+
+    private long lastCpuTicks;
+
+    private long lastSampleNanos;
+
+    private double cpuPercentSum;
+
+    private double cpuPercentMax;
+
+    private int cpuSamples;
+
+    private long maxRssKb;
+
+    private long maxHeapKb;
+
+    private AppProcess(Process process, int port, Path log) {
+        this.process = process;
+        this.port = port;
+        this.log = log;
+    }
+
+    /**
+     * 启动应用，上游地址指向桩服务，历史记录写入临时目录。
+     *
+     * @param jar       应用的可执行 jar
+     * @param port      HTTP 端口
+     * @param stubUrl   桩服务地址
+     * @param jvmArgs   额外的 JVM 参数
+     * @param extraArgs 额外的应用参数，可以覆盖默认值
+     */
+    static AppProcess start(Path jar, int port, String stubUrl, List<String> jvmArgs, List<String> extraArgs) throws IOException {
+        if (!Files.isRegularFile(jar)) {
+            throw new IOException("Application jar not found: " + jar + " (run 'mvn install -DskipTests' in the project root first)");
+        }
+        Path log = Files.createTempFile("taimountain-loadtest", ".log");
+        Path history = Files.createTempDirectory("taimountain-history");
+
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(jar.toString());
+        command.add("--server.port=" + port);
+        command.add("--weather.upstream.msn.base-url=" + stubUrl);
+        command.add("--weather.upstream.msn.http2=false");
+        command.add("--weather.upstream.weather-com.base-url=" + stubUrl);
+        command.add("--weather.history.dir=" + history);
+        command.add("--logging.level.com.hikarukimi=WARN");
+        command.addAll(extraArgs);
+
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        return new AppProcess(process, port, log);
+    }
+
+    /**
+     * 等待应用开始响应 HTTP 请求。
+     */
+    void awaitReady(Duration timeout) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl() + "/weathers/gate"))
+                .timeout(Duration.ofSeconds(2))
+                .build();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Application exited with code " + process.exitValue() + ", see " + log);
+            }
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    sample();
+                    return;
+                }
+            } catch (IOException e) {
+                // 尚未开始监听
+            }
+            Thread.sleep(250);
+        }
+        throw new IOException("Application did not start within " + timeout + ", see " + log);
+    }
+
+    /**
+     * 采集一次 CPU、RSS 和堆使用量。
+     */
+    void sample() {
+        long pid = process.pid();
+        try {
+            String stat = Files.readString(Path.of("/proc", String.valueOf(pid), "stat"));
+            // comm 字段可能包含空格，从最后一个 ')' 之后开始按空格切分，utime 和 stime 是第 14、15 个字段
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            long now = System.nanoTime();
+            if (lastSampleNanos != 0) {
+                double seconds = (now - lastSampleNanos) / 1e9;
+                double percent = (ticks - lastCpuTicks) * 100.0 / CLOCK_TICKS_PER_SECOND / seconds;
+                cpuPercentSum += percent;
+                cpuPercentMax = Math.max(cpuPercentMax, percent);
+                cpuSamples++;
+            }
+            lastCpuTicks = ticks;
+            lastSampleNanos = now;
+
+            for (String line : Files.readAllLines(Path.of("/proc", String.valueOf(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    maxRssKb = Math.max(maxRssKb, Long.parseLong(line.replaceAll("\\D", "")));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // 进程已退出或不是 Linux
+        }
+
+        try {
+            Process jcmd = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "jcmd").toString(),
+                    String.valueOf(pid), "GC.heap_info").redirectErrorStream(true).start();
+            String output = new String(jcmd.getInputStream().readAllBytes());
+            if (jcmd.waitFor(10, TimeUnit.SECONDS)) {
+                Matcher matcher = HEAP_USED.matcher(output);
+                if (matcher.find()) {
+                    maxHeapKb = Math.max(maxHeapKb, Long.parseLong(matcher.group(1)));
+                }
+            }
+        } catch (IOException e) {
+            // 没有 jcmd 时不采集堆使用量
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 读取应用的统计接口。
+     */
+    String get(String path) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl() + path)).timeout(Duration.ofSeconds(5)).build();
+            return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString()).body();
+        } catch (IOException e) {
+            return e.toString();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return e.toString();
+        }
+    }
+
+    void stop() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + port;
+    }
+
+    String wsUrl() {
+        return "ws://127.0.0.1:" + port;
+    }
+
+    Path getLog() {
+        return log;
+    }
+
+    double getCpuPercentAvg() {
+        return cpuSamples == 0 ? 0 : cpuPercentSum / cpuSamples;
+    }
+
+    double getCpuPercentMax() {
+        return cpuPercentMax;
+    }
+
+    long getMaxRssKb() {
+        return maxRssKb;
+    }
+
+    long getMaxHeapKb() {
+        return maxHeapKb;
+    }
+}
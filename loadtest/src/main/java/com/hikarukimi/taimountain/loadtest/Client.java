@@ -0,0 +1,169 @@
+package com.hikarukimi.taimountain.loadtest;
+
+import java.net.http.WebSocket;
+import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 一个 WebSocket 客户端会话。
+ * <p>
+ * 收到完整的文本帧后取出第一个 created（实况的观测时间，即桩服务的数据版本），
+ * 与桩服务记录的该版本被应用取走的时间比较，得到推送延迟。同一版本只统计第一次收到的帧，
+ * 连接全部建立之前取走的版本不统计。
+ *
+ * @author Hikarukimi
+ */
+class Client implements WebSocket.Listener {
+
+    private static final String CREATED = "\"created\":\"";
+
+    private final String location;
+
+    private final String upstreamKey;
+
+    private final UpstreamStub stub;
+
+    private final Recorder recorder;
+
+    private final StringBuilder partial = new StringBuilder();
+
+    private String lastCreated;
+
+    private volatile boolean open;
+
+    private volatile boolean failed;
+
+    Client(String location, String upstreamKey, UpstreamStub stub, Recorder recorder) {
+        this.location = location;
+        this.upstreamKey = upstreamKey;
+        this.stub = stub;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        open = true;
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        long received = System.nanoTime();
+        partial.append(data);
+        if (last) {
+            recorder.frames.increment();
+            recorder.bytes.add(partial.length());
+            onFrame(partial, received);
+            partial.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        open = false;
+        recorder.closed.increment();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        open = false;
+        failed = true;
+        recorder.errors.increment();
+        if (recorder.firstError == null) {
+            recorder.firstError = location + ": " + error;
+        }
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    String getLocation() {
+        return location;
+    }
+
+    private void onFrame(CharSequence frame, long received) {
+        int start = indexOf(frame, CREATED);
+        if (start < 0) {
+            return;
+        }
+        start += CREATED.length();
+        int end = start;
+        while (end < frame.length() && frame.charAt(end) != '"') {
+            end++;
+        }
+        String created = frame.subSequence(start, end).toString();
+        if (created.equals(lastCreated)) {
+            return;
+        }
+        lastCreated = created;
+        // 建立连接期间取走的数据包含应用冷启动的耗时，不计入推送延迟
+        long served = stub.servedBefore(upstreamKey, created, received);
+        if (served > 0 && served >= recorder.measureFrom) {
+            recorder.record(received - served);
+        }
+    }
+
+    private static int indexOf(CharSequence text, String target) {
+        int limit = text.length() - target.length();
+        outer:
+        for (int i = 0; i <= limit; i++) {
+            for (int j = 0; j < target.length(); j++) {
+                if (text.charAt(i + j) != target.charAt(j)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 所有客户端共享的统计。
+     */
+    static class Recorder {
+
+        final LongAdder frames = new LongAdder();
+
+        final LongAdder bytes = new LongAdder();
+
+        final LongAdder closed = new LongAdder();
+
+        final LongAdder errors = new LongAdder();
+
+        volatile String firstError;
+
+        /**
+         * 只统计此时间（纳秒）之后从桩服务取走的版本。
+         */
+        volatile long measureFrom = Long.MAX_VALUE;
+
+        private long[] latencies = new long[1024];
+
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = nanos;
+        }
+
+        /**
+         * 返回排序后的推送延迟（纳秒）。
+         */
+        synchronized long[] sortedLatencies() {
+            long[] copy = Arrays.copyOf(latencies, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.hikarukimi.taimountain.loadtest;
+
+import com.hikarukimi.taimountain.UrlConstant;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket 推送压测入口。
+ * <p>
+ * 启动本地上游桩服务和被测应用，按 --ramp 在各地点间均匀建立 --sessions 个 WebSocket 会话，
+ * 桩服务每隔 --change-interval 发布一个新版本的数据。运行 --duration 后输出推送延迟分位数、
+ * 帧吞吐量、应用的 CPU、RSS 和堆使用量，以及应用自身的推送统计。
+ * <p>
+ * 推送延迟是应用从桩服务取走某个版本的数据，到客户端收到包含该版本的帧之间的时间，
+ * 不包含应用等待下一次刷新的时间。指定 --max-p99 或 --max-errors 时，超出阈值以退出码 1 结束，可用于发布前的门禁。
+ * <p>
+ * 指定 --rest-rate 时另外按固定速率请求 /weathers/forecast，输出 REST 响应时间分位数和应用的上游统计（含对冲次数）。
+ * 配合 --stub-stall-rate 和缓存参数（如 -- --weather.cache.ttl=0ms --weather.cache.stale-while-revalidate=0ms），
+ * 每个请求都等待上游，可以对比启用 --weather.upstream.msn.hedge.enabled=true 前后的尾延迟。
+ *
+ * @author Hikarukimi
+ */
+public class LoadTest {
+
+    private static final int CLIENTS_PER_SELECTOR = 50;
+
+    public static void main(String[] args) throws Exception {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.help) {
+            System.out.println(Options.USAGE);
+            return;
+        }
+        System.exit(new LoadTest().run(options) ? 0 : 1);
+    }
+
+    private boolean run(Options options) throws Exception {
+        UpstreamStub stub = new UpstreamStub(options.stubLatency, options.stubJitter, options.stubFailureRate,
+                options.stubStallRate, options.stubStall);
+        stub.start();
+        AppProcess app = null;
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        try {
+            int port = options.port > 0 ? options.port : freePort();
+            List<String> appArgs = new ArrayList<>();
+            // 同一参数在命令行出现两次时 Spring 会把两个值拼接起来，'--' 之后指定的参数不再添加默认值
+            for (String arg : List.of(
+                    "--weather.cache.ttl=" + options.refresh.toMillis() / 2 + "ms",
+                    "--weather.refresh.min-interval=" + options.refresh.toMillis() + "ms",
+                    "--weather.refresh.max-interval=" + options.refresh.toMillis() * 2 + "ms")) {
+                String key = arg.substring(0, arg.indexOf('=') + 1);
+                if (options.appArgs.stream().noneMatch(appArg -> appArg.startsWith(key))) {
+                    appArgs.add(arg);
+                }
+            }
+            appArgs.addAll(options.appArgs);
+            app = AppProcess.start(options.jar, port, stub.baseUrl(), options.jvmArgs, appArgs);
+            System.out.printf("stub %s, app %s (log %s)%n", stub.baseUrl(), app.baseUrl(), app.getLog());
+            app.awaitReady(Duration.ofSeconds(90));
+
+            Client.Recorder recorder = new Client.Recorder();
+            List<Client> clients = connect(options, app, stub, recorder);
+            long connected = clients.stream().filter(Client::isOpen).count();
+            System.out.printf("connected %d/%d sessions%n", connected, options.sessions);
+
+            AppProcess monitored = app;
+            scheduler.scheduleAtFixedRate(stub::advance, options.changeInterval.toMillis(), options.changeInterval.toMillis(), TimeUnit.MILLISECONDS);
+            scheduler.scheduleAtFixedRate(monitored::sample, 5, 5, TimeUnit.SECONDS);
+            Client.Recorder restRecorder = new Client.Recorder();
+            RestProbe probe = new RestProbe(app, options.locations, restRecorder);
+            if (options.restRate > 0) {
+                probe.start(scheduler, options.restRate);
+            }
+            // 冷启动后的首批请求包含类加载和 JIT 编译的耗时
+            Thread.sleep(options.warmup.toMillis());
+
+            recorder.measureFrom = System.nanoTime();
+            restRecorder.measureFrom = recorder.measureFrom;
+            long framesBefore = recorder.frames.sum();
+            long bytesBefore = recorder.bytes.sum();
+            long start = System.nanoTime();
+            Thread.sleep(options.duration.toMillis());
+            double seconds = (System.nanoTime() - start) / 1e9;
+            scheduler.shutdownNow();
+            app.sample();
+
+            return report(options, stub, app, clients, recorder, probe, restRecorder,
+                    (recorder.frames.sum() - framesBefore) / seconds, (recorder.bytes.sum() - bytesBefore) / seconds);
+        } finally {
+            scheduler.shutdownNow();
+            if (app != null) {
+                app.stop();
+            }
+            stub.stop();
+        }
+    }
+
+    /**
+     * 按地点轮流分配会话，在 ramp 时间内均匀建立连接。
+     */
+    private static List<Client> connect(Options options, AppProcess app, UpstreamStub stub, Client.Recorder recorder)
+            throws InterruptedException {
+        // 每个 HttpClient 只有一个选择器线程，按 CLIENTS_PER_SELECTOR 分组，避免压测端先成为瓶颈
+        List<HttpClient> https = new ArrayList<>();
+        for (int i = 0; i < (options.sessions + CLIENTS_PER_SELECTOR - 1) / CLIENTS_PER_SELECTOR; i++) {
+            https.add(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build());
+        }
+        List<Client> clients = new ArrayList<>(options.sessions);
+        List<CompletableFuture<?>> pending = new ArrayList<>(options.sessions);
+        long interval = options.sessions == 0 ? 0 : options.ramp.toNanos() / options.sessions;
+        long start = System.nanoTime();
+        String query = options.delta ? "?mode=delta" : "";
+
+        for (int i = 0; i < options.sessions; i++) {
+            UrlConstant location = options.locations.get(i % options.locations.size());
+            URI upstream = URI.create(location.getUrlString());
+            Client client = new Client(location.name(), upstream.getRawPath() + "?" + upstream.getRawQuery(), stub, recorder);
+            clients.add(client);
+            pending.add(https.get(i / CLIENTS_PER_SELECTOR).newWebSocketBuilder()
+                    .buildAsync(URI.create(app.wsUrl() + "/ws/" + location.name() + query), client)
+                    .exceptionally(e -> {
+                        client.onError(null, e);
+                        return null;
+                    }));
+
+            long wait = start + interval * (i + 1) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).get(60, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            // 超时或失败的连接已计入错误数
+        }
+        return clients;
+    }
+
+    private static boolean report(Options options, UpstreamStub stub, AppProcess app, List<Client> clients,
+                                  Client.Recorder recorder, RestProbe probe, Client.Recorder restRecorder,
+                                  double framesPerSecond, double bytesPerSecond) {
+        long[] latencies = recorder.sortedLatencies();
+        long open = clients.stream().filter(Client::isOpen).count();
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sessions", options.sessions);
+        result.put("open", open);
+        result.put("errors", recorder.errors.sum());
+        if (recorder.firstError != null) {
+            result.put("firstError", recorder.firstError);
+        }
+        result.put("closed", recorder.closed.sum());
+        result.put("versions", stub.getVersion());
+        result.put("upstreamRequests", stub.getRequests());
+        result.put("upstreamFailures", stub.getFailures());
+        result.put("upstreamStalls", stub.getStalls());
+        result.put("frames", recorder.frames.sum());
+        result.put("framesPerSecond", String.format(Locale.ROOT, "%.1f", framesPerSecond));
+        result.put("kbPerSecond", String.format(Locale.ROOT, "%.1f", bytesPerSecond / 1024));
+        result.put("latencySamples", latencies.length);
+        result.put("latencyP50Ms", percentile(latencies, 0.50));
+        result.put("latencyP90Ms", percentile(latencies, 0.90));
+        result.put("latencyP99Ms", percentile(latencies, 0.99));
+        result.put("latencyMaxMs", percentile(latencies, 1.0));
+        if (options.restRate > 0) {
+            long[] rest = restRecorder.sortedLatencies();
+            result.put("restRequests", probe.getSent());
+            result.put("restErrors", restRecorder.errors.sum());
+            if (restRecorder.firstError != null) {
+                result.put("restFirstError", restRecorder.firstError);
+            }
+            result.put("restSamples", rest.length);
+            result.put("restP50Ms", percentile(rest, 0.50));
+            result.put("restP90Ms", percentile(rest, 0.90));
+            result.put("restP99Ms", percentile(rest, 0.99));
+            result.put("restMaxMs", percentile(rest, 1.0));
+        }
+        result.put("appCpuAvgPercent", String.format(Locale.ROOT, "%.1f", app.getCpuPercentAvg()));
+        result.put("appCpuMaxPercent", String.format(Locale.ROOT, "%.1f", app.getCpuPercentMax()));
+        result.put("appMaxRssMb", app.getMaxRssKb() / 1024);
+        result.put("appMaxHeapUsedMb", app.getMaxHeapKb() / 1024);
+
+        System.out.println();
+        result.forEach((key, value) -> System.out.printf("%-20s %s%n", key, value));
+        System.out.println();
+        System.out.println("push     " + app.get("/weathers/push/stats"));
+        System.out.println("sessions " + app.get("/weathers/sessions/stats"));
+        System.out.println("refresh  " + app.get("/weathers/refresh/stats"));
+        System.out.println("upstream " + app.get("/weathers/upstream/stats"));
+
+        List<String> failures = new ArrayList<>();
+        if (options.maxP99 != null && percentile(latencies, 0.99) > options.maxP99.toMillis()) {
+            failures.add("p99 latency " + percentile(latencies, 0.99) + "ms > " + options.maxP99.toMillis() + "ms");
+        }
+        // 出错的会话也不再处于打开状态，只按未打开的会话数计算
+        long errors = options.sessions - open;
+        if (options.maxErrors >= 0 && errors > options.maxErrors) {
+            failures.add(errors + " failed or closed sessions > " + options.maxErrors);
+        }
+        if (latencies.length == 0 && options.maxP99 != null) {
+            failures.add("no push latency samples");
+        }
+        System.out.println();
+        System.out.println(failures.isEmpty() ? "RESULT PASS" : "RESULT FAIL: " + String.join("; ", failures));
+        return failures.isEmpty();
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.max(0, Math.ceil(p * sorted.length) - 1));
+        return Math.round(sorted[index] / 10_000.0) / 100.0;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 命令行参数。
+     */
+    static class Options {
+
+        static final String USAGE = String.join("\n",
+                "Usage: java -jar loadtest.jar [options] [-- app-args...]",
+                "  --sessions N             WebSocket sessions (default 1000)",
+                "  --duration D             measurement time after all sessions are connected (default 60s)",
+                "  --ramp D                 time to open all sessions (default 10s)",
+                "  --warmup D               time to run the load before measuring starts (default 0s)",
+                "  --locations A,B          locations to spread sessions over (default all forecast locations)",
+                "  --mode legacy|delta      push mode (default legacy)",
+                "  --change-interval D      how often the stub publishes new data (default 5s)",
+                "  --refresh D              app refresh interval while data keeps changing (default 2s)",
+                "  --stub-latency D         upstream response delay (default 50ms)",
+                "  --stub-jitter D          +/- random upstream delay (default 20ms)",
+                "  --stub-failure-rate R    fraction of upstream requests answered with 503 (default 0)",
+                "  --stub-stall-rate R      fraction of upstream requests delayed by an extra --stub-stall (default 0)",
+                "  --stub-stall D           extra delay of a stalled upstream request (default 2s)",
+                "  --rest-rate N            also request /weathers/forecast N times per second (default 0)",
+                "  --jar PATH               application jar (default target/TaiMountain-0.0.1-SNAPSHOT-exec.jar)",
+                "  --port N                 application port (default: a free port)",
+                "  --jvm-arg ARG            extra JVM argument for the application, repeatable",
+                "  --max-p99 D              fail if p99 push latency exceeds D",
+                "  --max-errors N           fail if more than N sessions fail or close",
+                "Durations accept ms, s, m and h suffixes, e.g. 500ms, 30s, 2m.");
+
+        boolean help;
+        int sessions = 1000;
+        Duration duration = Duration.ofSeconds(60);
+        Duration ramp = Duration.ofSeconds(10);
+        Duration warmup = Duration.ZERO;
+        List<UrlConstant> locations = new ArrayList<>(Arrays.stream(UrlConstant.values())
+                .filter(UrlConstant::isForecast)
+                .toList());
+        boolean delta;
+        Duration changeInterval = Duration.ofSeconds(5);
+        Duration refresh = Duration.ofSeconds(2);
+        Duration stubLatency = Duration.ofMillis(50);
+        Duration stubJitter = Duration.ofMillis(20);
+        double stubFailureRate;
+        double stubStallRate;
+        Duration stubStall = Duration.ofSeconds(2);
+        int restRate;
+        Path jar = Path.of("target", "TaiMountain-0.0.1-SNAPSHOT-exec.jar");
+        int port;
+        List<String> jvmArgs = new ArrayList<>();
+        List<String> appArgs = new ArrayList<>();
+        Duration maxP99;
+        long maxErrors = -1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--")) {
+                    options.appArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+                    break;
+                }
+                if (arg.equals("--help") || arg.equals("-h")) {
+                    options.help = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                }
+                String value = args[++i];
+                try {
+                    parse(options, arg, value);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for " + arg + ": " + value);
+                }
+            }
+            if (options.locations.isEmpty()) {
+                throw new IllegalArgumentException("No locations");
+            }
+            return options;
+        }
+
+        private static void parse(Options options, String arg, String value) {
+            switch (arg) {
+                case "--sessions" -> options.sessions = Integer.parseInt(value);
+                case "--duration" -> options.duration = duration(value);
+                case "--ramp" -> options.ramp = duration(value);
+                case "--warmup" -> options.warmup = duration(value);
+                case "--locations" -> options.locations = Arrays.stream(value.split(","))
+                        .map(String::trim).map(UrlConstant::forecastOf).toList();
+                case "--mode" -> options.delta = switch (value) {
+                    case "delta" -> true;
+                    case "legacy" -> false;
+                    default -> throw new IllegalArgumentException("Unknown mode " + value);
+                };
+                case "--change-interval" -> options.changeInterval = duration(value);
+                case "--refresh" -> options.refresh = duration(value);
+                case "--stub-latency" -> options.stubLatency = duration(value);
+                case "--stub-jitter" -> options.stubJitter = duration(value);
+                case "--stub-failure-rate" -> options.stubFailureRate = Double.parseDouble(value);
+                case "--stub-stall-rate" -> options.stubStallRate = Double.parseDouble(value);
+                case "--stub-stall" -> options.stubStall = duration(value);
+                case "--rest-rate" -> options.restRate = Integer.parseInt(value);
+                case "--jar" -> options.jar = Path.of(value);
+                case "--port" -> options.port = Integer.parseInt(value);
+                case "--jvm-arg" -> options.jvmArgs.add(value);
+                case "--max-p99" -> options.maxP99 = duration(value);
+                case "--max-errors" -> options.maxErrors = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+
+        private static Duration duration(String value) {
+            String text = value.trim().toLowerCase(Locale.ROOT);
+            if (text.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+            }
+            if (text.endsWith("s")) {
+                return Duration.ofMillis(Math.round(Double.parseDouble(text.substring(0, text.length() - 1)) * 1000));
+            }
+            if (text.endsWith("m")) {
+                return Duration.ofMillis(Math.round(Double.parseDouble(text.substring(0, text.length() - 1)) * 60_000));
+            }
+            if (text.endsWith("h")) {
+                return Duration.ofMillis(Math.round(Double.parseDouble(text.substring(0, text.length() - 1)) * 3_600_000));
+            }
+            return Duration.ofMillis(Long.parseLong(text));
+        }
+    }
+}
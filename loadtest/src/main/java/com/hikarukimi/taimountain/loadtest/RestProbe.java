@@ -0,0 +1,77 @@
+package com.hikarukimi.taimountain.loadtest;
+
+import com.hikarukimi.taimountain.UrlConstant;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按固定速率请求 /weathers/forecast，记录每个请求的响应时间。
+ * <p>
+ * 请求异步发出，不等待上一个请求返回，上游变慢时请求会堆积而不是降低发送速率，
+ * 响应时间因此包含排队，不会被协调遗漏（coordinated omission）掩盖。
+ * 非 200 的响应或 code 不为 200 的响应体计为错误。
+ *
+ * @author Hikarukimi
+ */
+class RestProbe {
+
+    private static final String SUCCESS = "\"code\":200";
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+
+    private final AppProcess app;
+
+    private final List<UrlConstant> locations;
+
+    private final Client.Recorder recorder;
+
+    private final AtomicLong sent = new AtomicLong();
+
+    RestProbe(AppProcess app, List<UrlConstant> locations, Client.Recorder recorder) {
+        this.app = app;
+        this.locations = locations;
+        this.recorder = recorder;
+    }
+
+    /**
+     * 开始以每秒 rate 个请求的速率发送，各地点轮流请求。
+     */
+    void start(ScheduledExecutorService scheduler, int rate) {
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        scheduler.scheduleAtFixedRate(this::send, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    long getSent() {
+        return sent.get();
+    }
+
+    private void send() {
+        UrlConstant location = locations.get((int) (sent.getAndIncrement() % locations.size()));
+        HttpRequest request = HttpRequest.newBuilder(
+                        URI.create(app.baseUrl() + "/weathers/forecast?location=" + location.name()))
+                .timeout(Duration.ofSeconds(30))
+                .build();
+        long start = System.nanoTime();
+        http.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+            long elapsed = System.nanoTime() - start;
+            if (error == null && response.statusCode() == 200 && response.body().contains(SUCCESS)) {
+                if (start >= recorder.measureFrom) {
+                    recorder.record(elapsed);
+                }
+                return;
+            }
+            recorder.errors.increment();
+            if (recorder.firstError == null) {
+                recorder.firstError = location + ": " + (error != null ? error : "HTTP " + response.statusCode());
+            }
+        });
+    }
+}
@@ -0,0 +1,234 @@
+package com.hikarukimi.taimountain.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地上游桩服务，回放录制的 api.msn.cn 和 d1.weather.com.cn 响应。
+ * <p>
+ * MSN 响应中实况的 created 按版本号递增，每调用一次 advance 版本加一，应用刷新后即推送新数据。
+ * 每个请求按配置的延迟、抖动和失败率处理，失败时返回 503；另有 stallRate 比例的请求额外停顿 stall，
+ * 模拟上游偶发的长时间卡顿。
+ * 每个版本首次被某个上游地址取走的时间都会记录下来，客户端据此计算从上游返回到收到推送的延迟。
+ *
+ * @author Hikarukimi
+ */
+class UpstreamStub {
+
+    private static final String MSN_PATH = "/weather/overview";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String msnTemplate;
+
+    private final int createdStart;
+
+    private final int createdEnd;
+
+    private final OffsetDateTime createdBase;
+
+    private final byte[] basic;
+
+    private final Duration latency;
+
+    private final Duration jitter;
+
+    private final double failureRate;
+
+    private final double stallRate;
+
+    private final Duration stall;
+
+    private final AtomicInteger version = new AtomicInteger();
+
+    private volatile byte[] msnBody;
+
+    private volatile String created;
+
+    /**
+     * 上游地址（路径和参数） -> created -> 该版本被取走的时间（纳秒）。
+     */
+    private final Map<String, Map<String, List<Long>>> served = new ConcurrentHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder stalls = new LongAdder();
+
+    UpstreamStub(Duration latency, Duration jitter, double failureRate, double stallRate, Duration stall)
+            throws IOException {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.failureRate = failureRate;
+        this.stallRate = stallRate;
+        this.stall = stall;
+        this.msnTemplate = resource("/msn-overview.json");
+        this.basic = resource("/weather-com-basic.html").getBytes(StandardCharsets.UTF_8);
+
+        // 定位实况对象中的 created，只替换这一处
+        int current = msnTemplate.indexOf("\"current\"");
+        int key = msnTemplate.indexOf("\"created\"", current);
+        this.createdStart = msnTemplate.indexOf('"', msnTemplate.indexOf(':', key)) + 1;
+        this.createdEnd = msnTemplate.indexOf('"', createdStart);
+        if (current < 0 || key < 0 || createdStart <= 0 || createdEnd < 0) {
+            throw new IllegalStateException("current.created not found in msn-overview.json");
+        }
+        this.createdBase = OffsetDateTime.parse(msnTemplate.substring(createdStart, createdEnd));
+        render();
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::handle);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 发布下一个版本的数据。
+     */
+    void advance() {
+        version.incrementAndGet();
+        render();
+    }
+
+    /**
+     * 返回某个上游地址最近一次在 before 之前取走 created 版本的时间，没有时返回 -1。
+     */
+    long servedBefore(String pathAndQuery, String created, long before) {
+        Map<String, List<Long>> versions = served.get(pathAndQuery);
+        List<Long> times = versions == null ? null : versions.get(created);
+        if (times == null) {
+            return -1;
+        }
+        long result = -1;
+        for (long time : times) {
+            if (time <= before && time > result) {
+                result = time;
+            }
+        }
+        return result;
+    }
+
+    int getVersion() {
+        return version.get();
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getFailures() {
+        return failures.sum();
+    }
+
+    long getStalls() {
+        return stalls.sum();
+    }
+
+    private void render() {
+        String next = createdBase.plusMinutes(version.get()).toString();
+        msnBody = (msnTemplate.substring(0, createdStart) + next + msnTemplate.substring(createdEnd))
+                .getBytes(StandardCharsets.UTF_8);
+        created = next;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.increment();
+            long delay = latency.toMillis();
+            if (!jitter.isZero()) {
+                delay += ThreadLocalRandom.current().nextLong(-jitter.toMillis(), jitter.toMillis() + 1);
+            }
+            if (stallRate > 0 && ThreadLocalRandom.current().nextDouble() < stallRate) {
+                stalls.increment();
+                delay += stall.toMillis();
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            if (ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failures.increment();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+
+            // 应用启动时用 HEAD 请求预热连接
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            String path = exchange.getRequestURI().getRawPath();
+            byte[] body;
+            if (path.startsWith(MSN_PATH)) {
+                // 先取版本再记录时间，记录的时间不会早于应用拿到这份数据
+                String version = created;
+                body = msnBody;
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                String query = exchange.getRequestURI().getRawQuery();
+                served.computeIfAbsent(query == null ? path : path + "?" + query, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(version, k -> new CopyOnWriteArrayList<>())
+                        .add(System.nanoTime());
+                return;
+            }
+            body = basic;
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String resource(String name) {
+        try (InputStream in = UpstreamStub.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing resource " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
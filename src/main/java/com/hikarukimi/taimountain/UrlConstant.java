@@ -44,10 +44,43 @@ public enum UrlConstant {
      * @return 对应的 URL 字符串，如果找不到匹配的枚举则抛出 IllegalArgumentException。
      */
     public static String fromName(String name) {
+        return of(name).getUrlString();
+    }
+
+    /**
+     * 根据枚举名称获取对应的枚举常量。
+     *
+     * @param name 枚举名称，例如 "YD_URL"。
+     * @return 对应的枚举常量，如果找不到匹配的枚举则抛出 IllegalArgumentException。
+     */
+    public static UrlConstant of(String name) {
         try {
-            return valueOf(name).getUrlString();
-        } catch (IllegalArgumentException e) {
+            return valueOf(name);
+        } catch (IllegalArgumentException | NullPointerException e) {
             throw new IllegalArgumentException("No constant with name '" + name + "' found in com.hikarukimi.taimountain.UrlConstant.");
         }
     }
+
+    /**
+     * 根据枚举名称获取天气预报地点。
+     * <p>
+     * 预报接口、WebSocket 和刷新调度只接受 MSN 预报地点，BASIC_URL 的响应格式不同，同样视为无效。
+     *
+     * @param name 枚举名称，例如 "YD_URL"。
+     * @return 对应的预报地点，找不到或不是预报地点时抛出 IllegalArgumentException。
+     */
+    public static UrlConstant forecastOf(String name) {
+        UrlConstant constant = of(name);
+        if (!constant.isForecast()) {
+            throw new IllegalArgumentException("'" + name + "' is not a forecast location.");
+        }
+        return constant;
+    }
+
+    /**
+     * 是否为 MSN 天气预报地点。
+     */
+    public boolean isForecast() {
+        return this != BASIC_URL;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,54 @@
+package com.hikarukimi.taimountain.config;
+
+import com.hikarukimi.taimountain.controller.WebSocket;
+import jakarta.websocket.Extension;
+import jakarta.websocket.HandshakeResponse;
+import jakarta.websocket.server.HandshakeRequest;
+import jakarta.websocket.server.ServerEndpointConfig;
+
+import java.util.List;
+
+/**
+ * 天气预报 WebSocket 端点的握手配置。
+ * <p>
+ * 协商到 "json+deflate" 或 "jsonb+deflate" 子协议时，帧内容已经在应用层压缩并在会话间共享，
+ * 此时不再协商 permessage-deflate 扩展，避免容器为每个会话重复压缩；其他子协议保持容器的默认行为。
+ * <p>
+ * 扩展协商的接口拿不到子协议，这里依赖 Tomcat 在同一线程中先调用 getNegotiatedSubprotocol、
+ * 再调用 getNegotiatedExtensions、最后调用 modifyHandshake 的顺序，用 ThreadLocal 传递子协议。
+ *
+ * @author Hikarukimi
+ */
+public class ForecastEndpointConfigurator extends ServerEndpointConfig.Configurator {
+
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private static final ThreadLocal<String> NEGOTIATED_SUBPROTOCOL = new ThreadLocal<>();
+
+    @Override
+    public String getNegotiatedSubprotocol(List<String> supported, List<String> requested) {
+        String subprotocol = super.getNegotiatedSubprotocol(supported, requested);
+        NEGOTIATED_SUBPROTOCOL.set(subprotocol);
+        return subprotocol;
+    }
+
+    @Override
+    public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+        String subprotocol = NEGOTIATED_SUBPROTOCOL.get();
+        NEGOTIATED_SUBPROTOCOL.remove();
+        List<Extension> extensions = super.getNegotiatedExtensions(installed, requested);
+        if (!WebSocket.isSharedDeflate(subprotocol)) {
+            return extensions;
+        }
+        return extensions.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equals(extension.getName()))
+                .toList();
+    }
+
+    @Override
+    public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
+        // 客户端未请求扩展时不会调用 getNegotiatedExtensions，在这里清理，避免影响同一线程的下一次握手
+        NEGOTIATED_SUBPROTOCOL.remove();
+        super.modifyHandshake(sec, request, response);
+    }
+}
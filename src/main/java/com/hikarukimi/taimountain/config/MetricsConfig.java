@@ -0,0 +1,31 @@
+package com.hikarukimi.taimountain.config;
+
+import com.hikarukimi.taimountain.controller.SessionOutbox;
+import com.hikarukimi.taimountain.controller.WebSocket;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 运行指标配置类。
+ * <p>
+ * 指标通过 Actuator 的 /actuator/prometheus 暴露。上游请求、解析、危险天气判定、帧编码和刷新的耗时
+ * 在各自的类中记录，这里只注册读取现有统计的指标（会话数、帧数），抓取时才读取，不增加推送路径上的开销。
+ * 所有标签的取值都是有限集合：location 取自 UrlConstant，provider 为上游名称，其余为固定枚举值。
+ *
+ * @author Hikarukimi
+ */
+@Configuration
+public class MetricsConfig {
+
+    /**
+     * WebSocket 会话数和发送队列统计。
+     */
+    @Bean
+    public MeterBinder webSocketMetrics() {
+        return registry -> {
+            WebSocket.bindMetrics(registry);
+            SessionOutbox.bindMetrics(registry);
+        };
+    }
+}
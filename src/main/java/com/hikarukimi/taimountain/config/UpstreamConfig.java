@@ -0,0 +1,59 @@
+package com.hikarukimi.taimountain.config;
+
+import com.hikarukimi.taimountain.service.UpstreamClient;
+import com.hikarukimi.taimountain.util.PayloadEnvelope;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * 上游 HTTP 客户端配置类。
+ * <p>
+ * 为每个上游主机创建一个共享的、带连接池的 UpstreamClient，并在应用启动完成后预热连接。
+ *
+ * @author Hikarukimi
+ */
+@Configuration
+public class UpstreamConfig {
+
+    private static final String MSN_REFERER = "https://www.msn.cn/zh-cn/weather/forecast/in-%E5%B1%B1%E4%B8%9C%E7%9C%81,%E6%B3%B0%E5%AE%89%E5%B8%82?ocid=ansmsnweather&loc=eyJsIjoi5rOw5bGx5Yy6IiwiciI6IuWxseS4nOecgSIsInIyIjoi5rOw5a6J5biCIiwiYyI6IuS4reWNjuS6uuawkeWFseWSjOWbvSIsImkiOiJjbiIsInQiOjEwMiwiZyI6InpoLWNuIiwieCI6IjExNy4xMzUy";
+
+    /**
+     * api.msn.cn 天气预报接口客户端。
+     */
+    @Bean(destroyMethod = "dispose")
+    public UpstreamClient msnClient(WeatherProperties weatherProperties, MeterRegistry meterRegistry) {
+        return new UpstreamClient("msn", weatherProperties.getUpstream().getMsn(), PayloadEnvelope.JSON, headers -> {
+            headers.add("Referer", MSN_REFERER);
+        }, meterRegistry);
+    }
+
+    /**
+     * d1.weather.com.cn 基础天气接口客户端。
+     */
+    @Bean(destroyMethod = "dispose")
+    public UpstreamClient weatherComClient(WeatherProperties weatherProperties, MeterRegistry meterRegistry) {
+        return new UpstreamClient("weatherCom", weatherProperties.getUpstream().getWeatherCom(),
+                PayloadEnvelope.VAR_ASSIGNMENT, headers -> {
+                    headers.add("Host", "d1.weather.com.cn");
+                    headers.add("Referer", "https://www.weather.com.cn/");
+                }, meterRegistry);
+    }
+
+    /**
+     * 应用启动完成后异步预热所有上游连接池，不阻塞启动流程。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmupUpstreamClients(ApplicationReadyEvent event) {
+        List<UpstreamClient> clients = List.copyOf(
+                event.getApplicationContext().getBeansOfType(UpstreamClient.class).values());
+        Flux.fromIterable(clients)
+                .flatMap(UpstreamClient::warmup)
+                .subscribe();
+    }
+}
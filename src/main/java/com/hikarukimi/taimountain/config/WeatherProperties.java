@@ -0,0 +1,288 @@
+package com.hikarukimi.taimountain.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * 天气服务的可配置参数，对应 application.yaml 中的 weather.* 配置项。
+ *
+ * @author Hikarukimi
+ */
+@Getter
+@Setter
+@Configuration
+@ConfigurationProperties(prefix = "weather")
+public class WeatherProperties {
+
+    private final Cache cache = new Cache();
+
+    private final Upstream upstream = new Upstream();
+
+    private final Push push = new Push();
+
+    private final Refresh refresh = new Refresh();
+
+    private final History history = new History();
+
+    /**
+     * 预报快照缓存配置。
+     */
+    @Getter
+    @Setter
+    public static class Cache {
+
+        /**
+         * 快照的有效期，超过该时间后下一次读取会触发上游刷新。
+         */
+        private Duration ttl = Duration.ofSeconds(30);
+
+        /**
+         * 快照过期后仍可直接返回的时长（从过期时起算），期间读取立即返回旧快照并在后台刷新。
+         */
+        private Duration staleWhileRevalidate = Duration.ofMinutes(5);
+
+        /**
+         * 上游刷新失败时，仍可作为降级结果返回的快照最大年龄。
+         */
+        private Duration staleIfError = Duration.ofHours(24);
+    }
+
+    /**
+     * WebSocket 推送配置。
+     */
+    @Getter
+    @Setter
+    public static class Push {
+
+        /**
+         * 会话发送队列已满或发送跟不上时的处理策略。
+         */
+        private OutboxPolicy policy = OutboxPolicy.COALESCE;
+
+        /**
+         * 每个会话最多排队等待发送的帧数，不含正在发送的帧。
+         */
+        private int maxQueue = 4;
+
+        /**
+         * DISCONNECT 策略下，最早一帧等待发送超过该时间即断开会话。
+         */
+        private Duration maxLag = Duration.ofSeconds(30);
+
+        /**
+         * 数据没有变化、推送被跳过时，会话空闲超过该时间即发送一个 ping。
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+    }
+
+    /**
+     * 上游刷新调度配置。
+     */
+    @Getter
+    @Setter
+    public static class Refresh {
+
+        /**
+         * 上游数据持续更新时的刷新间隔，不宜小于 cache.ttl，否则刷新只会命中缓存。
+         */
+        private Duration minInterval = Duration.ofSeconds(30);
+
+        /**
+         * 上游数据长时间没有更新时，刷新间隔逐次加倍，最长不超过该值。
+         */
+        private Duration maxInterval = Duration.ofMinutes(10);
+
+        /**
+         * 每次刷新时间的随机抖动比例，0.2 表示在间隔的 ±20% 内浮动。
+         */
+        private double jitter = 0.2;
+
+        /**
+         * 没有 WebSocket 订阅者的地点，最近一次 REST 请求后继续刷新的时长。
+         */
+        private Duration demandWindow = Duration.ofMinutes(10);
+
+        /**
+         * 同一次检查中发起的所有刷新共用的截止时间，超时的地点按失败处理并退避。
+         * 上游请求本身不会被取消，完成后结果仍会写入快照缓存。
+         */
+        private Duration deadline = Duration.ofSeconds(10);
+    }
+
+    /**
+     * 实况观测历史记录配置。
+     */
+    @Getter
+    @Setter
+    public static class History {
+
+        /**
+         * 是否保存历史记录。
+         */
+        private boolean enabled = true;
+
+        /**
+         * 段文件的存放目录，每个地点一个子目录。
+         */
+        private Path dir = Path.of("data", "history");
+
+        /**
+         * 每个段文件容纳的记录条数，每条记录 104 字节。
+         */
+        private int segmentRecords = 65536;
+    }
+
+    /**
+     * 对冲请求配置：首个请求超过近期耗时的 percentile 分位数仍未返回时，再发出一个相同的请求，取先返回的结果。
+     */
+    @Getter
+    @Setter
+    public static class Hedge {
+
+        /**
+         * 是否启用对冲请求。
+         */
+        private boolean enabled;
+
+        /**
+         * 触发对冲的耗时分位数，按最近的请求耗时动态计算。
+         */
+        private double percentile = 0.95;
+
+        /**
+         * 对冲延迟的下限，避免上游很快时几乎每个请求都被对冲。
+         */
+        private Duration minDelay = Duration.ofMillis(50);
+
+        /**
+         * 对冲请求占请求总数的最大比例。
+         */
+        private double maxRate = 0.1;
+    }
+
+    /**
+     * 慢速客户端的处理策略。
+     */
+    public enum OutboxPolicy {
+
+        /**
+         * 新的完整帧替换队列中尚未发送的帧，增量帧排队，队列满时丢弃最早的帧并改发完整帧。
+         */
+        COALESCE,
+
+        /**
+         * 队列满时丢弃新帧。
+         */
+        DROP,
+
+        /**
+         * 队列满或落后超过 maxLag 时断开会话，客户端重连后重新获取完整帧。
+         */
+        DISCONNECT
+    }
+
+    /**
+     * 上游接口配置，每个上游主机使用一个独立的连接池。
+     */
+    @Getter
+    @Setter
+    public static class Upstream {
+
+        /**
+         * api.msn.cn 天气预报接口。
+         */
+        private final Host msn = new Host("https://api.msn.cn", true);
+
+        /**
+         * d1.weather.com.cn 基础天气接口。
+         */
+        private final Host weatherCom = new Host("https://d1.weather.com.cn", false);
+    }
+
+    /**
+     * 单个上游主机的连接配置。
+     */
+    @Getter
+    @Setter
+    public static class Host {
+
+        /**
+         * 上游主机地址，请求路径和参数取自 UrlConstant。
+         */
+        private String baseUrl;
+
+        /**
+         * 是否优先使用 HTTP/2（通过 ALPN 协商，不支持时回退到 HTTP/1.1）。
+         */
+        private boolean http2;
+
+        /**
+         * 连接池最大连接数。
+         */
+        private int maxConnections = 50;
+
+        /**
+         * 从连接池获取连接的最长等待时间。
+         */
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        /**
+         * 空闲连接的最长保留时间。
+         */
+        private Duration maxIdleTime = Duration.ofSeconds(60);
+
+        /**
+         * 连接的最长存活时间。
+         */
+        private Duration maxLifeTime = Duration.ofMinutes(10);
+
+        /**
+         * 建立连接的超时时间。
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * 等待响应的超时时间。
+         */
+        private Duration responseTimeout = Duration.ofSeconds(10);
+
+        /**
+         * 响应体在内存中聚合的最大字节数。
+         */
+        private DataSize maxInMemorySize = DataSize.ofMegabytes(4);
+
+        /**
+         * 启动时预先建立的连接数，为 0 时不预热。
+         */
+        private int warmupConnections = 1;
+
+        /**
+         * 连续失败达到该次数后熔断，不再请求该上游。
+         */
+        private int failureThreshold = 5;
+
+        /**
+         * 熔断持续时间，到期后放行一个探测请求。
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * 对冲请求配置。
+         */
+        private final Hedge hedge = new Hedge();
+
+        public Host() {
+        }
+
+        public Host(String baseUrl, boolean http2) {
+            this.baseUrl = baseUrl;
+            this.http2 = http2;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.hikarukimi.taimountain.controller;
+
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.SendHandler;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个 WebSocket 会话的有界发送队列。
+ * <p>
+ * 每个会话同时只有一帧在发送，上一帧的 SendHandler 回调后才发送下一帧，其余帧在队列中等待，
+ * 队列长度受 weather.push.max-queue 限制。慢速客户端只会让自己的队列积压，
+ * 不会占用定时任务线程，也不影响其他会话。队列满时按 weather.push.policy 处理：
+ * <ul>
+ *     <li>COALESCE：可替换的帧（完整帧）替换队列中所有未发送的帧；增量帧在队列满时被拒绝，由调用方改发完整帧；</li>
+ *     <li>DROP：丢弃新帧；</li>
+ *     <li>DISCONNECT：断开会话，最早一帧等待超过 weather.push.max-lag 时同样断开。</li>
+ * </ul>
+ * 空闲会话的 ping 在 boundedElastic 线程上发送，不持有队列的锁：容器的 sendPing 是阻塞调用，
+ * 对端停止读取时最多阻塞 PING_TIMEOUT_MILLIS，期间新帧进入队列，ping 结束后再继续发送。
+ * DISCONNECT 时关闭会话同样在 boundedElastic 线程上进行。
+ *
+ * @author Hikarukimi
+ */
+@Slf4j
+public class SessionOutbox implements SendHandler {
+
+    /**
+     * 阻塞发送（ping）的超时时间，通过 Tomcat 的会话属性设置。
+     */
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private static final long PING_TIMEOUT_MILLIS = 5000;
+
+    private static final AtomicLong QUEUED = new AtomicLong();
+    private static final AtomicLong MAX_DEPTH = new AtomicLong();
+    private static final LongAdder SENT = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder COALESCED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder DISCONNECTED = new LongAdder();
+
+    private final Session session;
+
+    private final WeatherProperties.OutboxPolicy policy;
+
+    private final int maxQueue;
+
+    private final long maxLagNanos;
+
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+
+    /**
+     * 是否有帧正在发送。
+     */
+    private boolean sending;
+
+    /**
+     * 正在发送的帧的开始时间，仅在 sending 为 true 时有意义。
+     */
+    private long inFlightSince;
+
+    /**
+     * 是否有 ping 正在发送，期间提交的帧进入队列。
+     */
+    private boolean pinging;
+
+    private boolean closed;
+
+    /**
+     * 最近一次发送帧或 ping 的时间。
+     */
+    private long lastActivity = System.nanoTime();
+
+    public SessionOutbox(Session session, WeatherProperties.Push push) {
+        this.session = session;
+        this.policy = push.getPolicy();
+        this.maxQueue = push.getMaxQueue();
+        this.maxLagNanos = push.getMaxLag().toNanos();
+        session.getUserProperties().put(BLOCKING_SEND_TIMEOUT, PING_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * 提交一帧。
+     *
+     * @param message     String 发送为文本帧，byte[] 发送为二进制帧
+     * @param replaceable 该帧是否包含完整状态，可以替换队列中尚未发送的帧
+     * @return 该帧被接受时返回 true；被丢弃或会话因此断开时返回 false
+     */
+    public synchronized boolean offer(Object message, boolean replaceable) {
+        if (closed || !session.isOpen()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (!sending && !pinging) {
+            send(message, now);
+            return true;
+        }
+
+        if (policy == WeatherProperties.OutboxPolicy.DISCONNECT && now - oldestSince(now) > maxLagNanos) {
+            disconnect("Client is more than " + maxLagNanos / 1_000_000_000L + "s behind.");
+            return false;
+        }
+        if (policy == WeatherProperties.OutboxPolicy.COALESCE && replaceable) {
+            COALESCED.add(queue.size());
+            QUEUED.addAndGet(-queue.size());
+            queue.clear();
+        }
+        if (queue.size() >= maxQueue) {
+            if (policy == WeatherProperties.OutboxPolicy.DISCONNECT) {
+                disconnect("Outbound queue is full.");
+            } else {
+                DROPPED.increment();
+            }
+            return false;
+        }
+
+        queue.addLast(new Entry(message, now));
+        MAX_DEPTH.accumulateAndGet(queue.size(), Math::max);
+        QUEUED.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 上一帧发送完成，继续发送队列中的下一帧。
+     */
+    @Override
+    public synchronized void onResult(SendResult result) {
+        sending = false;
+        if (result.isOK()) {
+            SENT.increment();
+        } else {
+            FAILED.increment();
+            log.warn("[websocket] 发送失败：id={}，message={}", session.getId(), result.getException().getMessage());
+        }
+        sendNext();
+    }
+
+    /**
+     * 没有帧或 ping 在发送、且空闲超过指定时间时发送一个 ping，保持连接活跃。
+     * <p>
+     * 只在锁内判断和登记，ping 本身交给 boundedElastic 线程发送，调用线程不会被停止读取的对端阻塞。
+     *
+     * @param idleNanos 空闲时间阈值（纳秒）
+     */
+    public void pingIfIdle(long idleNanos) {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (closed || sending || pinging || now - lastActivity < idleNanos || !session.isOpen()) {
+                return;
+            }
+            lastActivity = now;
+            pinging = true;
+        }
+        Schedulers.boundedElastic().schedule(this::ping);
+    }
+
+    private void ping() {
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+        } catch (IOException | RuntimeException e) {
+            log.warn("[websocket] 发送 ping 失败：id={}，message={}", session.getId(), e.getMessage());
+        } finally {
+            synchronized (this) {
+                pinging = false;
+                if (!sending) {
+                    sendNext();
+                }
+            }
+        }
+    }
+
+    /**
+     * 会话关闭后丢弃尚未发送的帧。
+     */
+    public synchronized void discard() {
+        closed = true;
+        QUEUED.addAndGet(-queue.size());
+        queue.clear();
+    }
+
+    /**
+     * 返回所有会话发送队列的汇总统计。
+     *
+     * @return 当前排队帧数、单个会话出现过的最大队列长度，以及发送、失败、替换、丢弃和断开的累计次数
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", QUEUED.get());
+        stats.put("maxDepth", MAX_DEPTH.get());
+        stats.put("sent", SENT.sum());
+        stats.put("failed", FAILED.sum());
+        stats.put("coalesced", COALESCED.sum());
+        stats.put("dropped", DROPPED.sum());
+        stats.put("disconnected", DISCONNECTED.sum());
+        return stats;
+    }
+
+    /**
+     * 将发送队列的汇总统计注册为指标：weather.websocket.frames（按 result 区分发送、失败、替换和丢弃的帧数）、
+     * weather.websocket.disconnects（因慢速被断开的会话数）和 weather.websocket.queued（当前排队帧数）。
+     *
+     * @param registry 指标注册表
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        frameCounter(registry, "sent", SENT);
+        frameCounter(registry, "failed", FAILED);
+        frameCounter(registry, "coalesced", COALESCED);
+        frameCounter(registry, "dropped", DROPPED);
+        FunctionCounter.builder("weather.websocket.disconnects", DISCONNECTED, LongAdder::sum)
+                .description("Sessions disconnected for falling behind")
+                .register(registry);
+        Gauge.builder("weather.websocket.queued", QUEUED, AtomicLong::get)
+                .description("Frames waiting in session outboxes")
+                .register(registry);
+    }
+
+    private static void frameCounter(MeterRegistry registry, String result, LongAdder adder) {
+        FunctionCounter.builder("weather.websocket.frames", adder, LongAdder::sum)
+                .description("WebSocket frames by outcome")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private void sendNext() {
+        Entry next = queue.pollFirst();
+        if (next != null) {
+            QUEUED.decrementAndGet();
+            if (session.isOpen() && !closed) {
+                send(next.message, System.nanoTime());
+            } else {
+                discard();
+            }
+        }
+    }
+
+    private void send(Object message, long now) {
+        sending = true;
+        inFlightSince = now;
+        lastActivity = now;
+        if (message instanceof byte[] bytes) {
+            // 每个会话使用独立的 ByteBuffer 视图，底层字节数组共享
+            session.getAsyncRemote().sendBinary(ByteBuffer.wrap(bytes), this);
+        } else {
+            session.getAsyncRemote().sendText((String) message, this);
+        }
+    }
+
+    /**
+     * 返回最早一帧开始等待的时间，包括正在发送的帧。nanoTime 只能相减比较，不能直接比较大小。
+     */
+    private long oldestSince(long now) {
+        Entry head = queue.peekFirst();
+        if (!sending) {
+            return head == null ? now : head.enqueuedAt;
+        }
+        return head == null || head.enqueuedAt - inFlightSince > 0 ? inFlightSince : head.enqueuedAt;
+    }
+
+    /**
+     * 在锁内只把队列标记为关闭并丢弃尚未发送的帧，关闭会话交给 boundedElastic 线程：
+     * 容器发送关闭帧时要等待正在发送的帧，慢速客户端上最多阻塞 PING_TIMEOUT_MILLIS，
+     * 不能让调用方（持有推送锁的定时任务线程）等待。
+     */
+    private void disconnect(String reason) {
+        DISCONNECTED.increment();
+        discard();
+        log.warn("[websocket] 断开慢速连接：id={}，reason={}", session.getId(), reason);
+        Schedulers.boundedElastic().schedule(() -> close(reason));
+    }
+
+    private void close(String reason) {
+        try {
+            session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, reason));
+        } catch (IOException | RuntimeException e) {
+            log.warn("[websocket] 关闭连接失败：id={}，message={}", session.getId(), e.getMessage());
+        }
+    }
+
+    private static class Entry {
+
+        private final Object message;
+
+        private final long enqueuedAt;
+
+        Entry(Object message, long enqueuedAt) {
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -1,52 +1,145 @@
 package com.hikarukimi.taimountain.controller;
 
+import com.alibaba.fastjson2.JSON;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.hikarukimi.taimountain.Response;
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.BusinessException;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import com.hikarukimi.taimountain.service.Frame;
+import com.hikarukimi.taimountain.service.HistoryResolution;
+import com.hikarukimi.taimountain.service.HistoryStore;
+import com.hikarukimi.taimountain.service.RefreshScheduler;
 import com.hikarukimi.taimountain.service.WeatherService;
+import com.hikarukimi.taimountain.util.Fingerprint;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Mono;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
+ * 天气接口控制器。
+ * <p>
+ * 涉及上游请求的接口返回 Mono，Servlet 容器以异步方式处理，等待上游响应期间不占用 Tomcat 工作线程。
+ * 返回快照数据的接口带有 Age 响应头，为快照获取以来的秒数；上游不可用时返回的旧快照由此可以识别。
+ * 这些接口同时带有由快照内容版本生成的强 ETag，以及按快照剩余有效期计算的 Cache-Control: max-age，
+ * 请求的 If-None-Match 与当前 ETag 匹配时返回不带响应体的 304，不做序列化。
+ * data 为 Frame 的响应直接写出 Frame 已经编码好的 UTF-8 JSON 字节，与 WebSocket 推送的内容相同。
+ * /forecasts 一次返回多个地点的预报，ETag 由各地点快照的版本组合而成，Age 取最旧的快照；
+ * 有地点失败时以 Cache-Control: no-store 返回，不带 ETag。
+ *
  * @author Hikarukimi
  */
 @RestController
 @RequestMapping("/weathers")
 public class WeatherController {
 
+    private static final byte[] HISTORY_PREFIX = "{\"code\":200,\"message\":\"success\",\"data\":[".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] HISTORY_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+
+    private static final ZoneId HISTORY_ZONE = ZoneId.of("Asia/Shanghai");
+
     private final WeatherService weatherService;
 
+    private final RefreshScheduler refreshScheduler;
+
+    private final HistoryStore historyStore;
+
+    /**
+     * 快照有效期（毫秒），用于计算 max-age。
+     */
+    private final long ttlMillis;
+
+    /**
+     * 快照过期后仍可返回的时长（秒），即 Cache-Control 的 stale-while-revalidate。
+     */
+    private final long staleWhileRevalidateSeconds;
+
     @Autowired
-    public WeatherController(WeatherService weatherService) {
+    public WeatherController(WeatherService weatherService, RefreshScheduler refreshScheduler, HistoryStore historyStore,
+                             WeatherProperties weatherProperties) {
         if (weatherService == null) {
             throw new IllegalArgumentException("weatherService must not be null");
         }
         this.weatherService = weatherService;
+        this.refreshScheduler = refreshScheduler;
+        this.historyStore = historyStore;
+        this.ttlMillis = weatherProperties.getCache().getTtl().toMillis();
+        this.staleWhileRevalidateSeconds = weatherProperties.getCache().getStaleWhileRevalidate().toSeconds();
     }
 
     @GetMapping("/basic")
-    public ResponseEntity<Response> getWeather() {
-        try {
-            Response response = weatherService.getWeather();
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(500)
-                    .body(Response.error("Failed to retrieve basic weather information."));
-        }
+    public Mono<ResponseEntity<Response>> getWeather(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return weatherService.getWeather()
+                .map(snapshot -> conditional(snapshot, ifNoneMatch))
+                .onErrorResume(e -> Mono.just(ResponseEntity.ok(
+                        Response.error("Failed to retrieve weather data: " + e.getMessage()))));
     }
 
     @GetMapping("/forecast")
-    public ResponseEntity<Response> forecast(@RequestParam("location") String location) {
+    public Mono<ResponseEntity<Response>> forecast(@RequestParam("location") String location,
+                                                   @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         if (location == null) {
             throw new IllegalArgumentException("location must not be null");
         }
 
-        try {
-            Response response = weatherService.getForecast(location);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(500)
-                    .body(Response.error("Failed to retrieve weather forecast."));
+        forecastLocation(location);
+        refreshScheduler.recordDemand(location);
+        return weatherService.getForecast(location)
+                .map(snapshot -> conditional(snapshot, ifNoneMatch))
+                .onErrorResume(e -> Mono.just(ResponseEntity.ok(
+                        Response.error("Failed to retrieve forecast data: " + e.getMessage()))));
+    }
+
+    /**
+     * 一次返回多个地点的天气预报，各地点并发获取，data 为地点名到该地点 Response 的映射，顺序与请求一致。
+     * 单个地点失败时该地点的 code 为 500，其他地点照常返回。
+     */
+    @GetMapping("/forecasts")
+    public Mono<ResponseEntity<Response>> forecasts(@RequestParam("locations") List<String> locations,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Set<String> keys = new LinkedHashSet<>();
+        for (String location : locations) {
+            if (!location.isBlank()) {
+                keys.add(forecastLocation(location.trim()).name());
+            }
+        }
+        if (keys.isEmpty()) {
+            throw new BusinessException("locations must not be empty");
         }
+
+        keys.forEach(refreshScheduler::recordDemand);
+        return weatherService.getForecasts(keys)
+                .map(snapshots -> combined(snapshots, ifNoneMatch));
     }
 
     @GetMapping("/gate")
@@ -60,18 +153,235 @@ public class WeatherController {
         }
     }
 
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Response> getCacheStats() {
+        return ResponseEntity.ok(weatherService.getCacheStats());
+    }
+
+    @GetMapping("/upstream/stats")
+    public ResponseEntity<Response> getUpstreamStats() {
+        return ResponseEntity.ok(weatherService.getUpstreamStats());
+    }
+
+    @GetMapping("/frames/stats")
+    public ResponseEntity<Response> getFrameStats() {
+        return ResponseEntity.ok(Response.data(Frame.getStats()));
+    }
+
+    @GetMapping("/sessions/stats")
+    public ResponseEntity<Response> getSessionStats() {
+        return ResponseEntity.ok(Response.data(SessionOutbox.getStats()));
+    }
+
+    @GetMapping("/push/stats")
+    public ResponseEntity<Response> getPushStats() {
+        return ResponseEntity.ok(Response.data(WebSocket.getPushStats()));
+    }
+
+    @GetMapping("/refresh/stats")
+    public ResponseEntity<Response> getRefreshStats() {
+        return ResponseEntity.ok(Response.data(refreshScheduler.getStats()));
+    }
+
+    /**
+     * 查询指定地点 [from, to] 范围内的实况观测记录，结果边读边写出，不在内存中聚合。
+     * <p>
+     * from 和 to 可以是毫秒时间戳、带时区的 ISO-8601 时间（如 2025-03-16T14:00:00+08:00），
+     * 或不带时区的本地时间（按东八区解释）。默认查询截至当前时间的最近 24 小时。
+     * <p>
+     * resolution 为需要的时间分辨率（如 1h、6h、1d、7d），返回区间长度不超过该值的最粗汇总层级，
+     * 实际使用的层级见响应头 X-History-Resolution。不指定或小于一小时时返回原始观测。
+     */
+    @GetMapping("/history")
+    public ResponseEntity<StreamingResponseBody> history(@RequestParam("location") String location,
+                                                         @RequestParam(value = "from", required = false) String from,
+                                                         @RequestParam(value = "to", required = false) String to,
+                                                         @RequestParam(value = "resolution", required = false) String resolution) {
+        UrlConstant key = forecastLocation(location);
+        long end = parseTime(to, System.currentTimeMillis());
+        long start = parseTime(from, end - Duration.ofDays(1).toMillis());
+        if (start > end) {
+            throw new BusinessException("from must not be after to");
+        }
+        HistoryResolution tier = parseResolution(resolution);
+
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            out.write(HISTORY_PREFIX);
+            boolean[] first = {true};
+            Consumer<Object> writer = record -> {
+                try {
+                    if (!first[0]) {
+                        out.write(',');
+                    }
+                    first[0] = false;
+                    JSON.writeTo(out, record);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            try {
+                if (tier == HistoryResolution.RAW) {
+                    historyStore.query(key, start, end, writer::accept);
+                } else {
+                    historyStore.queryRollups(key, tier, start, end, writer::accept);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.write(HISTORY_SUFFIX);
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-History-Resolution", tier.name().toLowerCase(Locale.ROOT))
+                .body(body);
+    }
+
+    @GetMapping("/history/stats")
+    public ResponseEntity<Response> getHistoryStats() {
+        return ResponseEntity.ok(Response.data(historyStore.getStats()));
+    }
+
     @GetMapping("/location/{location}")
-    public ResponseEntity<Response> getWeatherByLocation(@PathVariable("location") String location) {
+    public Mono<ResponseEntity<Response>> getWeatherByLocation(@PathVariable("location") String location,
+                                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         if (location == null) {
             throw new IllegalArgumentException("location must not be null");
         }
 
+        forecastLocation(location);
+        refreshScheduler.recordDemand(location);
+        return weatherService.getWeatherByLocation(location)
+                .map(snapshot -> conditional(snapshot, ifNoneMatch))
+                .onErrorResume(e -> Mono.just(ResponseEntity.status(500)
+                        .body(Response.error("Failed to retrieve weather information."))));
+    }
+
+    /**
+     * 为快照生成带 ETag、Cache-Control 和 Age 的响应，If-None-Match 匹配时返回 304。
+     */
+    private ResponseEntity<Response> conditional(Snapshot<Response> snapshot, String ifNoneMatch) {
+        long ageMillis = Math.max(0, snapshot.ageMillis(System.currentTimeMillis()));
+        String etag = "\"" + Long.toHexString(snapshot.getVersion()) + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(Math.max(0, ttlMillis - ageMillis) / 1000, TimeUnit.SECONDS)
+                .cachePublic()
+                .staleWhileRevalidate(staleWhileRevalidateSeconds, TimeUnit.SECONDS);
+        boolean notModified = matches(ifNoneMatch, etag);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(etag)
+                .cacheControl(cacheControl)
+                .header(HttpHeaders.AGE, Long.toString(ageMillis / 1000));
+        return notModified ? builder.build() : builder.body(encoded(snapshot.getValue()));
+    }
+
+    /**
+     * 把多个地点的快照合并为一个响应。全部成功时按合并后的快照生成条件响应，否则直接返回，不允许缓存部分失败的结果。
+     */
+    private ResponseEntity<Response> combined(Map<String, Snapshot<Response>> snapshots, String ifNoneMatch) {
+        Map<String, Response> data = new LinkedHashMap<>();
+        Fingerprint fingerprint = new Fingerprint().add(snapshots.size());
+        long fetchedAt = Long.MAX_VALUE;
+        boolean complete = true;
+        for (Map.Entry<String, Snapshot<Response>> entry : snapshots.entrySet()) {
+            Snapshot<Response> snapshot = entry.getValue();
+            data.put(entry.getKey(), encoded(snapshot.getValue()));
+            fingerprint.add(entry.getKey()).add(snapshot.getVersion());
+            fetchedAt = Math.min(fetchedAt, snapshot.getFetchedAt());
+            complete &= snapshot.getValue().getCode() == 200;
+        }
+        Response response = Response.data(data);
+        if (!complete) {
+            return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(response);
+        }
+        return conditional(new Snapshot<>(response, fetchedAt, fingerprint.value()), ifNoneMatch);
+    }
+
+    /**
+     * data 为 Frame 时改为写出其 JSON 文本，不再序列化。
+     * <p>
+     * 响应以 UTF-8 输出时，Jackson 的 UTF8JsonGenerator 直接复制 Frame 缓存的 UTF-8 字节，
+     * 每次请求不再把 JSON 文本重新编码为 UTF-8；外层的 code、message 仍由 Jackson 写出。
+     */
+    static Response encoded(Response response) {
+        if (response.getData() instanceof Frame frame) {
+            return Response.custom(response.getCode(), response.getMessage(), new RawValue(new FrameJson(frame)));
+        }
+        return response;
+    }
+
+    /**
+     * 按 If-None-Match 的弱比较规则判断是否命中：忽略 W/ 前缀，* 匹配任意 ETag。
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 校验预报地点，无效或不是预报地点时以 BusinessException 返回 400。
+     */
+    private static UrlConstant forecastLocation(String location) {
         try {
-            Response response = weatherService.getWeatherByLocation(location);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            return ResponseEntity.status(500)
-                    .body(Response.error("Failed to retrieve weather information."));
+            return UrlConstant.forecastOf(location);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException(e.getMessage());
+        }
+    }
+
+    private static HistoryResolution parseResolution(String value) {
+        if (value == null || value.isBlank() || "raw".equalsIgnoreCase(value.trim())) {
+            return HistoryResolution.RAW;
+        }
+        try {
+            return HistoryResolution.coarsest(DurationStyle.detectAndParse(value.trim()));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Invalid resolution: " + value);
+        }
+    }
+
+    /**
+     * 解析毫秒时间戳、带偏移的 ISO 时间或东八区本地时间，先按带偏移的格式解析，失败后再按本地时间解析。
+     */
+    static long parseTime(String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        // 未编码的 '+' 在查询参数中会被解码为空格
+        String text = value.trim().replace(' ', '+');
+        try {
+            if (text.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(text);
+            }
+            try {
+                return OffsetDateTime.parse(text).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                return LocalDateTime.parse(text).atZone(HISTORY_ZONE).toInstant().toEpochMilli();
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new BusinessException("Invalid time: " + value);
+        }
+    }
+
+    /**
+     * 以 Frame 缓存的 UTF-8 字节作为 SerializedString 的编码结果，避免按文本重新编码。
+     */
+    private static final class FrameJson extends SerializedString {
+
+        FrameJson(Frame frame) {
+            super(frame.getText());
+            _unquotedUTF8Ref = frame.getUtf8();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,17 @@
 package com.hikarukimi.taimountain.controller;
 
-import com.alibaba.fastjson2.JSON;
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.ForecastEndpointConfigurator;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.service.ForecastStream;
+import com.hikarukimi.taimountain.service.Frame;
+import com.hikarukimi.taimountain.service.RefreshScheduler;
 import com.hikarukimi.taimountain.service.WeatherService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import jakarta.websocket.*;
 import jakarta.websocket.server.PathParam;
 import jakarta.websocket.server.ServerEndpoint;
@@ -13,26 +23,69 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * WebSocket 控制器，用于处理客户端的连接、消息接收、发送等操作。
+ * <p>
+ * 默认每次推送完整的 {current, forecast}。连接时带上 '?mode=delta' 的客户端改为接收增量帧：
+ * 连接后先收到一个完整帧，之后只在数据变化时收到相对上一帧的增量，帧格式见 ForecastStream。
+ * 客户端发现 base 与本地序号不一致时，可以发送文本 "full" 重新获取完整帧。
+ * <p>
+ * 通过 Sec-WebSocket-Protocol 协商子协议：默认及 "json" 使用文本 JSON 帧，"jsonb" 使用
+ * fastjson2 JSONB 编码的二进制帧，内容结构与 JSON 帧相同。"json+deflate" 和 "jsonb+deflate"
+ * 在此基础上发送 raw deflate 压缩后的二进制帧，每帧独立压缩，客户端使用 new Inflater(true) 解压。
+ * 每一帧对每种格式只编码、压缩一次，压缩结果在所有会话间共享；这两种子协议不再协商 permessage-deflate。
+ * <p>
+ * 所有帧都经由会话自己的 SessionOutbox 发送，慢速客户端的处理策略见 SessionOutbox。
+ * 会话的建立和断开会通知 RefreshScheduler，由它决定各 location 的刷新时机并调用 push 推送新快照。
  *
  * @author Hikarukimi
  */
 @Slf4j
 @Component
-@ServerEndpoint("/ws/{location}")
+@ServerEndpoint(value = "/ws/{location}",
+        subprotocols = {WebSocket.PROTOCOL_JSONB_DEFLATE, WebSocket.PROTOCOL_JSON_DEFLATE, WebSocket.PROTOCOL_JSONB, WebSocket.PROTOCOL_JSON},
+        configurator = ForecastEndpointConfigurator.class)
 public class WebSocket implements ApplicationContextAware {
 
-    // 使用 CopyOnWriteArraySet存储 session，避免并发修改异常
-    private static final CopyOnWriteArraySet<Session> WEB_SOCKET_SET = new CopyOnWriteArraySet<>();
+    // 按 location 分组存储 session，每组使用 CopyOnWriteArraySet 避免并发修改异常
+    private static final ConcurrentHashMap<String, CopyOnWriteArraySet<Session>> SESSIONS_BY_LOCATION = new ConcurrentHashMap<>();
+
+    // 每个 location 的推送状态
+    private static final ConcurrentHashMap<String, ForecastStream> STREAMS = new ConcurrentHashMap<>();
+
+    // 每个 location 一次推送（编码并交给所有会话的发送队列）的耗时
+    private static final ConcurrentHashMap<String, Timer> PUSH_TIMERS = new ConcurrentHashMap<>();
+
+    private static final String MODE_DELTA = "delta";
+
+    static final String PROTOCOL_JSON = "json";
+
+    static final String PROTOCOL_JSONB = "jsonb";
+
+    static final String PROTOCOL_JSON_DEFLATE = "json+deflate";
+
+    static final String PROTOCOL_JSONB_DEFLATE = "jsonb+deflate";
+
+    private static final String FULL_REQUEST = "full";
 
     private static ApplicationContext springApplication;
 
     private static WeatherService weatherService;
 
+    private static WeatherProperties weatherProperties;
+
+    private static RefreshScheduler refreshScheduler;
+
     /**
      * 设置 Spring 的 ApplicationContext 到静态变量中。
      */
@@ -51,8 +104,21 @@ public class WebSocket implements ApplicationContextAware {
     public void onMessage(Session session, String message) throws IOException {
         log.info("[websocket] 收到消息：id={}，message={}", session.getId(), message);
 
+        // 增量模式的客户端请求重新发送完整帧
+        if (isDeltaMode(session) && FULL_REQUEST.equals(message.trim())) {
+            String location = (String) session.getUserProperties().get("location");
+            session.getUserProperties().remove("seq");
+            ForecastStream stream = STREAMS.get(location);
+            if (stream != null) {
+                synchronized (stream) {
+                    sendFull(session, stream);
+                }
+            }
+            return;
+        }
+
         // 回复客户端当前时间戳和消息内容
-        session.getAsyncRemote().sendText("[" + Instant.now().toEpochMilli() + "] Hello " + message);
+        outbox(session).offer("[" + Instant.now().toEpochMilli() + "] Hello " + message, false);
     }
 
     /**
@@ -66,14 +132,48 @@ public class WebSocket implements ApplicationContextAware {
         if (weatherService == null) {
             weatherService = springApplication.getBean(WeatherService.class);
         }
+        if (weatherProperties == null) {
+            weatherProperties = springApplication.getBean(WeatherProperties.class);
+        }
+        if (refreshScheduler == null) {
+            refreshScheduler = springApplication.getBean(RefreshScheduler.class);
+        }
+        try {
+            UrlConstant.forecastOf(location);
+        } catch (IllegalArgumentException e) {
+            log.warn("[websocket] 拒绝连接：id={}，message={}", session.getId(), e.getMessage());
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.CANNOT_ACCEPT, "Unknown forecast location."));
+            } catch (IOException ex) {
+                log.warn("[websocket] 关闭连接失败：id={}，message={}", session.getId(), ex.getMessage());
+            }
+            return;
+        }
 
-        // 将 location 存储到 Session 的用户属性中
+        // 将 location、推送模式和发送队列存储到 Session 的用户属性中
         session.getUserProperties().put("location", location);
+        session.getUserProperties().put("outbox", new SessionOutbox(session, weatherProperties.getPush()));
+        List<String> mode = session.getRequestParameterMap().get("mode");
+        if (mode != null && mode.contains(MODE_DELTA)) {
+            session.getUserProperties().put("mode", MODE_DELTA);
+        }
 
-        // 将新会话添加到集合中
-        WEB_SOCKET_SET.add(session);
+        // 将新会话添加到对应 location 的集合中
+        SESSIONS_BY_LOCATION.compute(location, (key, sessions) -> {
+            if (sessions == null) {
+                sessions = new CopyOnWriteArraySet<>();
+            }
+            sessions.add(session);
+            return sessions;
+        });
 
         log.info("[websocket] 新的连接：id={}", session.getId());
+        refreshScheduler.subscribe(location);
+
+        // 连接后立即收到当前的完整数据，不必等待下一次刷新
+        weatherService.getForecastData(location).subscribe(
+                data -> push(location, data),
+                e -> log.warn("[websocket] 获取天气信息失败：location={}，message={}", location, e.getMessage()));
     }
 
     /**
@@ -85,8 +185,21 @@ public class WebSocket implements ApplicationContextAware {
     @OnClose
     public void onClose(Session session, CloseReason closeReason){
         log.info("[websocket] 连接断开：id={}，reason={}", session.getId(), closeReason);
-        // 移除已关闭的会话
-        WEB_SOCKET_SET.remove(session);
+        SessionOutbox outbox = outbox(session);
+        if (outbox != null) {
+            outbox.discard();
+        }
+
+        // 移除已关闭的会话，location 下没有会话时一并移除分组
+        // 推送状态保留，地点数量有限，推送统计也不会因会话断开而丢失
+        String location = (String) session.getUserProperties().get("location");
+        if (location != null) {
+            refreshScheduler.unsubscribe(location);
+            SESSIONS_BY_LOCATION.computeIfPresent(location, (key, sessions) -> {
+                sessions.remove(session);
+                return sessions.isEmpty() ? null : sessions;
+            });
+        }
     }
 
     /**
@@ -104,29 +217,164 @@ public class WebSocket implements ApplicationContextAware {
     }
 
     /**
-     * 发送消息给所有连接的客户端。
+     * 向空闲超过 weather.push.keep-alive 的会话发送 ping。
+     * <p>
+     * 数据没有变化时不会推送任何帧，由 ScheduleService 定期调用以保持连接活跃。
      */
-    public void sendMessage() throws IOException {
-        if (WEB_SOCKET_SET.isEmpty()) {
+    public void pingIdleSessions() {
+        if (SESSIONS_BY_LOCATION.isEmpty()) {
             return;
         }
-        if (weatherService == null) {
-            weatherService = springApplication.getBean(WeatherService.class);
+        long keepAliveNanos = weatherProperties.getPush().getKeepAlive().toNanos();
+        for (CopyOnWriteArraySet<Session> sessions : SESSIONS_BY_LOCATION.values()) {
+            for (Session session : sessions) {
+                SessionOutbox outbox = outbox(session);
+                if (outbox != null) {
+                    outbox.pingIfIdle(keepAliveNanos);
+                }
+            }
         }
+    }
 
-        for (Session session : WEB_SOCKET_SET) {
-            if (session.isOpen()) {
-                // 从 Session 的用户属性中获取 location
-                String location = (String) session.getUserProperties().get("location");
-                if (location == null) {
+    /**
+     * 将快照推送给 location 下尚未收到该快照的会话。
+     * <p>
+     * 每个 location 的完整帧和增量帧各只序列化一次，同一帧发送给该 location 下的所有会话。
+     * 快照内容没有变化且所有会话都已是最新时，本次推送被跳过。
+     *
+     * @param location 地点
+     * @param data     天气预报快照
+     */
+    public void push(String location, ForecastData data) {
+        CopyOnWriteArraySet<Session> sessions = SESSIONS_BY_LOCATION.get(location);
+        if (sessions == null) {
+            return;
+        }
+        ForecastStream stream = STREAMS.computeIfAbsent(location, key -> new ForecastStream());
+        long start = System.nanoTime();
+        // 同一 location 的发布和发送串行进行，保证每个会话收到的序号连续
+        synchronized (stream) {
+            ForecastStream.Update update = stream.publish(data);
+            boolean delivered = false;
+
+            for (Session session : sessions) {
+                if (!session.isOpen()) {
+                    continue;
+                }
+                Long seq = (Long) session.getUserProperties().get("seq");
+                if (seq != null && seq == update.getSeq()) {
                     continue;
                 }
+                delivered = true;
+                if (!isDeltaMode(session)) {
+                    sendSnapshot(session, stream, stream.getLegacyFrame());
+                } else if (seq != null && update.getDeltaFrame() != null && seq == update.getSeq() - 1
+                        && send(session, update.getDeltaFrame(), false)) {
+                    session.getUserProperties().put("seq", update.getSeq());
+                } else {
+                    // 增量帧无法排队时改发完整帧，完整帧会替换队列中尚未发送的帧
+                    sendFull(session, stream);
+                }
+            }
 
-                // 根据 location 获取天气信息
-                String message = JSON.toJSONString(weatherService.getForecast(location).getData());
+            stream.record(delivered);
+        }
+        PUSH_TIMERS.computeIfAbsent(location, WebSocket::pushTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
 
-                session.getAsyncRemote().sendText(message);
+    /**
+     * 注册每个 location 的在线会话数指标 weather.websocket.sessions。
+     *
+     * @param registry 指标注册表
+     */
+    public static void bindMetrics(MeterRegistry registry) {
+        for (UrlConstant location : UrlConstant.values()) {
+            if (!location.isForecast()) {
+                continue;
             }
+            Gauge.builder("weather.websocket.sessions", () -> {
+                        CopyOnWriteArraySet<Session> sessions = SESSIONS_BY_LOCATION.get(location.name());
+                        return sessions == null ? 0 : sessions.size();
+                    })
+                    .description("Open WebSocket sessions")
+                    .tag("location", location.name())
+                    .register(registry);
+        }
+    }
+
+    /**
+     * push 只会收到已通过校验的 location，标签取值有限。
+     */
+    private static Timer pushTimer(String location) {
+        return Timer.builder("weather.websocket.push")
+                .description("Time to publish a snapshot and queue its frames for every session of a location")
+                .tag("location", location)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(Metrics.globalRegistry);
+    }
+
+    private static void sendFull(Session session, ForecastStream stream) {
+        sendSnapshot(session, stream, stream.getFullFrame());
+    }
+
+    /**
+     * 发送包含完整状态的帧，并记录会话已收到的序号。
+     */
+    private static void sendSnapshot(Session session, ForecastStream stream, Frame frame) {
+        if (frame == null) {
+            return;
+        }
+        if (send(session, frame, true)) {
+            session.getUserProperties().put("seq", stream.getSeq());
+        } else {
+            // 完整帧被丢弃，下一次推送时重试
+            session.getUserProperties().remove("seq");
         }
     }
+
+    /**
+     * 按会话协商的子协议选择文本帧或二进制帧，交给会话的发送队列。
+     *
+     * @return 帧被发送队列接受时返回 true
+     */
+    private static boolean send(Session session, Frame frame, boolean replaceable) {
+        Object message = switch (Objects.requireNonNullElse(session.getNegotiatedSubprotocol(), "")) {
+            case PROTOCOL_JSONB -> frame.getBinary();
+            case PROTOCOL_JSON_DEFLATE -> frame.getDeflatedText();
+            case PROTOCOL_JSONB_DEFLATE -> frame.getDeflatedBinary();
+            default -> frame.getText();
+        };
+        return outbox(session).offer(message, replaceable);
+    }
+
+    /**
+     * 返回各 location 的推送统计。
+     *
+     * @return 按 location 区分的推送和跳过次数
+     */
+    public static Map<String, Object> getPushStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        STREAMS.forEach((location, stream) -> stats.put(location, stream.getStats()));
+        return stats;
+    }
+
+    private static SessionOutbox outbox(Session session) {
+        return (SessionOutbox) session.getUserProperties().get("outbox");
+    }
+
+    /**
+     * 判断子协议是否使用应用层共享压缩。
+     *
+     * @param subprotocol 协商到的子协议，可以为 null
+     * @return 使用共享压缩时返回 true
+     */
+    public static boolean isSharedDeflate(String subprotocol) {
+        return PROTOCOL_JSON_DEFLATE.equals(subprotocol) || PROTOCOL_JSONB_DEFLATE.equals(subprotocol);
+    }
+
+    private static boolean isDeltaMode(Session session) {
+        return MODE_DELTA.equals(session.getUserProperties().get("mode"));
+    }
 }
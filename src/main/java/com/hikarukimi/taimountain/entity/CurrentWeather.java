@@ -2,7 +2,7 @@ package com.hikarukimi.taimountain.entity;
 
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.List;
 import com.hikarukimi.taimountain.util.Utils;
 
 /**
@@ -173,9 +173,9 @@ public class CurrentWeather {
         this.evaluateWindLevel = evaluateWindLevel();
     }
 
-    public void buildComment(ArrayList<WeatherWarning> alters) {
+    public void buildComment(List<WeatherWarning> alters) {
         for (WeatherWarning alter : alters) {
-            if (alter.getTitle().contains("雷电")) {
+            if (alter.getTitle() != null && alter.getTitle().contains("雷电")) {
                 this.thunder = true;
                 break;
             }
@@ -0,0 +1,329 @@
+package com.hikarukimi.taimountain.entity;
+
+import com.hikarukimi.taimountain.util.Fingerprint;
+import com.hikarukimi.taimountain.util.HazardEngine;
+import com.hikarukimi.taimountain.util.HazardMasks;
+
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * 逐小时天气预报的列式存储。
+ * <p>
+ * 每个字段保存为一个基本类型数组，危险天气标记保存为位图（由 HazardEngine 批量计算），
+ * 预报时间额外保存一份秒级时间戳用于按时间查找行，输出时使用上游的原始文本，
+ * sunrise/sunset 每天只保存一份，天气描述按取值去重。与逐行保存 WeatherForecast 对象相比，
+ * 缓存中每个地点的常驻内存更小，按字段扫描时也更连续。
+ * <p>
+ * 此类同时是一个只读的 List&lt;WeatherForecast&gt; 视图，序列化时按需生成行对象，
+ * 因此接口输出的结构与原来的 WeatherForecast 列表保持一致。
+ *
+ * @author Hikarukimi
+ */
+public class ForecastColumns extends AbstractList<WeatherForecast> implements RandomAccess {
+
+    /**
+     * 时间戳缺失时的占位值。
+     */
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final int size;
+
+    private final String[] cap;
+    private final double[] feels;
+    private final double[] rh;
+    private final double[] precip;
+    private final double[] temp;
+    private final double[] rainAmount;
+    private final double[] windSpd;
+    private final double[] raAccu;
+    private final double[] cloudCover;
+    private final double[] dewPt;
+
+    /**
+     * 预报时间的原始文本，以及解析得到的秒级时间戳（无法解析时为 NO_TIME）。
+     * 原始文本可能带有小数秒或使用 Z 表示 UTC，重新格式化会改变输出，因此原样保存。
+     */
+    private final String[] createdText;
+    private final long[] created;
+
+    /**
+     * 每行所属的天，以及每天的日出、日落时间。
+     */
+    private final short[] day;
+    private final String[] sunrise;
+    private final String[] sunset;
+
+    /**
+     * 危险天气标记和风力等级。
+     */
+    private final HazardMasks hazards;
+
+    private ForecastColumns(int size, int days) {
+        this.size = size;
+        this.cap = new String[size];
+        this.feels = new double[size];
+        this.rh = new double[size];
+        this.precip = new double[size];
+        this.temp = new double[size];
+        this.rainAmount = new double[size];
+        this.windSpd = new double[size];
+        this.raAccu = new double[size];
+        this.cloudCover = new double[size];
+        this.dewPt = new double[size];
+        this.createdText = new String[size];
+        this.created = new long[size];
+        this.day = new short[size];
+        this.sunrise = new String[days];
+        this.sunset = new String[days];
+        this.hazards = new HazardMasks(size);
+    }
+
+    /**
+     * 将逐行的天气预报转换为列式存储，并计算危险天气标记。
+     * <p>
+     * 相邻且 sunrise/sunset 相同的行视为同一天。
+     *
+     * @param rows 逐小时天气预报
+     * @return 列式存储
+     */
+    public static ForecastColumns from(List<WeatherForecast> rows) {
+        int size = rows.size();
+        int days = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == 0 || isNewDay(rows.get(i - 1), rows.get(i))) {
+                days++;
+            }
+        }
+
+        ForecastColumns columns = new ForecastColumns(size, days);
+        Map<String, String> caps = new HashMap<>();
+        int currentDay = -1;
+        for (int i = 0; i < size; i++) {
+            WeatherForecast row = rows.get(i);
+            if (i == 0 || isNewDay(rows.get(i - 1), row)) {
+                currentDay++;
+                columns.sunrise[currentDay] = row.getSunrise();
+                columns.sunset[currentDay] = row.getSunset();
+            }
+            columns.day[i] = (short) currentDay;
+            columns.cap[i] = row.getCap() == null ? null : caps.computeIfAbsent(row.getCap(), c -> c);
+            columns.feels[i] = row.getFeels();
+            columns.rh[i] = row.getRh();
+            columns.precip[i] = row.getPrecip();
+            columns.temp[i] = row.getTemp();
+            columns.rainAmount[i] = row.getRainAmount();
+            columns.windSpd[i] = row.getWindSpd();
+            columns.raAccu[i] = row.getRaAccu();
+            columns.cloudCover[i] = row.getCloudCover();
+            columns.dewPt[i] = row.getDewPt();
+            columns.createdText[i] = row.getCreated();
+            columns.created[i] = parseTime(row.getCreated());
+        }
+        HazardEngine.getDefault().evaluate(columns.temp, columns.rh, columns.dewPt, columns.windSpd,
+                columns.cloudCover, columns.rainAmount, size, columns.hazards);
+        return columns;
+    }
+
+    private static long parseTime(String text) {
+        if (text == null) {
+            return NO_TIME;
+        }
+        try {
+            return OffsetDateTime.parse(text, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            return NO_TIME;
+        }
+    }
+
+    private static boolean isNewDay(WeatherForecast previous, WeatherForecast row) {
+        return !Objects.equals(previous.getSunrise(), row.getSunrise())
+                || !Objects.equals(previous.getSunset(), row.getSunset());
+    }
+
+    /**
+     * 计算整个预报范围内的总降雨量。
+     *
+     * @return 总降雨量（单位：mm）
+     */
+    public double totalRainAmount() {
+        double total = 0.0;
+        for (int i = 0; i < size; i++) {
+            total += rainAmount[i];
+        }
+        return total;
+    }
+
+    /**
+     * 判断本对象的第 index 行与 other 的第 otherIndex 行是否相同。
+     * <p>
+     * 危险天气标记由数值字段计算而来，数值相同时标记必然相同，因此不再单独比较。
+     *
+     * @param index      本对象中的行号
+     * @param other      另一份列式存储
+     * @param otherIndex other 中的行号
+     * @return 两行相同时返回 true
+     */
+    public boolean rowEquals(int index, ForecastColumns other, int otherIndex) {
+        return Objects.equals(createdText[index], other.createdText[otherIndex])
+                && Double.compare(temp[index], other.temp[otherIndex]) == 0
+                && Double.compare(feels[index], other.feels[otherIndex]) == 0
+                && Double.compare(rh[index], other.rh[otherIndex]) == 0
+                && Double.compare(precip[index], other.precip[otherIndex]) == 0
+                && Double.compare(rainAmount[index], other.rainAmount[otherIndex]) == 0
+                && Double.compare(windSpd[index], other.windSpd[otherIndex]) == 0
+                && Double.compare(raAccu[index], other.raAccu[otherIndex]) == 0
+                && Double.compare(cloudCover[index], other.cloudCover[otherIndex]) == 0
+                && Double.compare(dewPt[index], other.dewPt[otherIndex]) == 0
+                && Objects.equals(cap[index], other.cap[otherIndex])
+                && Objects.equals(sunrise[day[index]], other.sunrise[other.day[otherIndex]])
+                && Objects.equals(sunset[day[index]], other.sunset[other.day[otherIndex]]);
+    }
+
+    /**
+     * 将所有行的字段加入指纹。危险天气标记由数值字段计算而来，不再单独加入。
+     *
+     * @param fingerprint 指纹
+     */
+    public void addTo(Fingerprint fingerprint) {
+        fingerprint.add(size);
+        for (int i = 0; i < size; i++) {
+            fingerprint.add(createdText[i])
+                    .add(temp[i]).add(feels[i]).add(rh[i]).add(precip[i]).add(rainAmount[i])
+                    .add(windSpd[i]).add(raAccu[i]).add(cloudCover[i]).add(dewPt[i])
+                    .add(cap[i]).add(sunrise[day[i]]).add(sunset[day[i]]);
+        }
+    }
+
+    /**
+     * 查找预报时间为指定时间戳的行。
+     *
+     * @param epochSecond 秒级时间戳
+     * @return 行号，不存在时返回 -1
+     */
+    public int indexOfCreated(long epochSecond) {
+        if (epochSecond == NO_TIME) {
+            return -1;
+        }
+        for (int i = 0; i < size; i++) {
+            if (created[i] == epochSecond) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 生成第 index 个小时的行对象。
+     *
+     * @param index 行号
+     * @return 新建的 WeatherForecast 对象
+     */
+    @Override
+    public WeatherForecast get(int index) {
+        Objects.checkIndex(index, size);
+        WeatherForecast row = new WeatherForecast();
+        row.setCap(cap[index]);
+        row.setFeels(feels[index]);
+        row.setRh(rh[index]);
+        row.setPrecip(precip[index]);
+        row.setTemp(temp[index]);
+        row.setCreated(getCreatedString(index));
+        row.setRainAmount(rainAmount[index]);
+        row.setWindSpd(windSpd[index]);
+        row.setRaAccu(raAccu[index]);
+        row.setSunrise(sunrise[day[index]]);
+        row.setSunset(sunset[day[index]]);
+        row.setCloudCover(cloudCover[index]);
+        row.setDewPt(dewPt[index]);
+        row.setRime(hazards.isRime(index));
+        row.setFreezingRain(hazards.isFreezingRain(index));
+        row.setSeaOfClouds(hazards.isSeaOfClouds(index));
+        row.setBlizzard(hazards.isBlizzard(index));
+        row.setFreezing(hazards.isFreezing(index));
+        row.setEvaluateWindLevel(hazards.getWindLevel(index));
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 返回第 index 个小时的预报时间，与上游返回的文本完全相同。
+     *
+     * @param index 行号
+     * @return 预报时间，缺失时返回 null
+     */
+    public String getCreatedString(int index) {
+        return createdText[index];
+    }
+
+    public long getCreated(int index) {
+        return created[index];
+    }
+
+    public double getTemp(int index) {
+        return temp[index];
+    }
+
+    public double getFeels(int index) {
+        return feels[index];
+    }
+
+    public double getRh(int index) {
+        return rh[index];
+    }
+
+    public double getPrecip(int index) {
+        return precip[index];
+    }
+
+    public double getRainAmount(int index) {
+        return rainAmount[index];
+    }
+
+    public double getWindSpd(int index) {
+        return windSpd[index];
+    }
+
+    public double getCloudCover(int index) {
+        return cloudCover[index];
+    }
+
+    public double getDewPt(int index) {
+        return dewPt[index];
+    }
+
+    public boolean isRime(int index) {
+        return hazards.isRime(index);
+    }
+
+    public boolean isFreezingRain(int index) {
+        return hazards.isFreezingRain(index);
+    }
+
+    public boolean isSeaOfClouds(int index) {
+        return hazards.isSeaOfClouds(index);
+    }
+
+    public boolean isBlizzard(int index) {
+        return hazards.isBlizzard(index);
+    }
+
+    public boolean isFreezing(int index) {
+        return hazards.isFreezing(index);
+    }
+
+    public WindLevel getWindLevel(int index) {
+        return hazards.getWindLevel(index);
+    }
+}
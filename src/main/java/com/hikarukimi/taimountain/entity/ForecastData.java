@@ -0,0 +1,105 @@
+package com.hikarukimi.taimountain.entity;
+
+import com.hikarukimi.taimountain.service.Frame;
+import com.hikarukimi.taimountain.util.Fingerprint;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 单个地点的天气预报数据，由一次 MSN overview 响应解析而来。
+ *
+ * @author Hikarukimi
+ */
+@Getter
+public class ForecastData {
+
+    /**
+     * 当前天气。
+     */
+    private final CurrentWeather current;
+
+    /**
+     * 逐小时天气预报，以列式存储保存。
+     */
+    private final ForecastColumns forecast;
+
+    /**
+     * 当前生效的天气预警。
+     */
+    private final List<WeatherWarning> alerts;
+
+    /**
+     * 内容指纹，两份数据的指纹相同即认为内容没有变化。
+     */
+    private final long fingerprint;
+
+    /**
+     * {current, forecast} 的编码结果，REST 接口和默认模式的 WebSocket 推送共用，第一次使用时创建。
+     */
+    private volatile Frame frame;
+
+    public ForecastData(CurrentWeather current, ForecastColumns forecast, List<WeatherWarning> alerts) {
+        this.current = current;
+        this.forecast = forecast;
+        this.alerts = alerts;
+        this.fingerprint = fingerprint(current, forecast, alerts);
+    }
+
+    /**
+     * 转换为接口返回使用的 {current, forecast} 结构。
+     *
+     * @return 包含当前天气和天气预报的 Map
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> resultHashMap = new HashMap<>();
+        resultHashMap.put("current", current);
+        resultHashMap.put("forecast", forecast);
+        return resultHashMap;
+    }
+
+    /**
+     * 返回 {current, forecast} 的编码结果。同一份数据只序列化一次，之后每个请求和每个会话都写出同一份字节。
+     *
+     * @return 以 toMap 的结果为内容的帧
+     */
+    public Frame getFrame() {
+        Frame result = frame;
+        if (result == null) {
+            synchronized (this) {
+                result = frame;
+                if (result == null) {
+                    result = new Frame(toMap());
+                    frame = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 计算内容指纹。current 中由其他字段计算而来的危险天气标记和风力等级不参与计算。
+     */
+    private static long fingerprint(CurrentWeather current, ForecastColumns forecast, List<WeatherWarning> alerts) {
+        Fingerprint fingerprint = new Fingerprint()
+                .add(current.getCap()).add(current.getDaytime()).add(current.getCreated())
+                .add(current.getTemp()).add(current.getFeels()).add(current.getDewPt()).add(current.getRh())
+                .add(current.getWindSpd()).add(current.getPvdrWindDir()).add(current.getPvdrWindSpd())
+                .add(current.getBaro()).add(current.getAqi()).add(current.getVis()).add(current.getUv())
+                .add(current.getCloudCover()).add(current.getRainAmount()).add(current.getComment());
+        forecast.addTo(fingerprint);
+        fingerprint.add(alerts.size());
+        for (WeatherWarning alert : alerts) {
+            fingerprint.add(alert.getId()).add(alert.getTitle()).add(alert.getEvent()).add(alert.getEventName())
+                    .add(alert.getLevel()).add(alert.getSeverity()).add(alert.getSignificance())
+                    .add(alert.getShortCap()).add(alert.getSafetyGuide()).add(alert.getClassName())
+                    .add(alert.getCredit()).add(alert.getDetailIndex())
+                    .add(Arrays.toString(alert.getAbbreviation()))
+                    .add(alert.getCreated()).add(alert.getStart()).add(alert.getEnd());
+        }
+        return fingerprint.value();
+    }
+}
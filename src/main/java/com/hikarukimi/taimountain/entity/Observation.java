@@ -0,0 +1,97 @@
+package com.hikarukimi.taimountain.entity;
+
+import lombok.Getter;
+
+/**
+ * 某一时刻的实况观测记录，是 CurrentWeather 中可以定长存储的部分。
+ * <p>
+ * 文本字段（天气描述、风向文本、提示语）不保存；没有降雨量时 rainAmount 为 NaN，没有风力等级时 windLevel 为 null。
+ *
+ * @author Hikarukimi
+ */
+@Getter
+public class Observation {
+
+    /**
+     * 观测时间（毫秒时间戳），取自上游的 created。
+     */
+    private final long time;
+
+    private final double temp;
+
+    private final double feels;
+
+    private final double dewPt;
+
+    private final double rh;
+
+    private final double windSpd;
+
+    private final double baro;
+
+    private final double aqi;
+
+    private final double vis;
+
+    private final double uv;
+
+    private final double cloudCover;
+
+    private final double rainAmount;
+
+    private final boolean rime;
+
+    private final boolean freezingRain;
+
+    private final boolean seaOfClouds;
+
+    private final boolean blizzard;
+
+    private final boolean thunder;
+
+    private final boolean freezing;
+
+    private final WindLevel windLevel;
+
+    public Observation(long time, double temp, double feels, double dewPt, double rh, double windSpd,
+                       double baro, double aqi, double vis, double uv, double cloudCover, double rainAmount,
+                       boolean rime, boolean freezingRain, boolean seaOfClouds, boolean blizzard,
+                       boolean thunder, boolean freezing, WindLevel windLevel) {
+        this.time = time;
+        this.temp = temp;
+        this.feels = feels;
+        this.dewPt = dewPt;
+        this.rh = rh;
+        this.windSpd = windSpd;
+        this.baro = baro;
+        this.aqi = aqi;
+        this.vis = vis;
+        this.uv = uv;
+        this.cloudCover = cloudCover;
+        this.rainAmount = rainAmount;
+        this.rime = rime;
+        this.freezingRain = freezingRain;
+        this.seaOfClouds = seaOfClouds;
+        this.blizzard = blizzard;
+        this.thunder = thunder;
+        this.freezing = freezing;
+        this.windLevel = windLevel;
+    }
+
+    /**
+     * 从实况天气创建观测记录。
+     *
+     * @param time    观测时间（毫秒时间戳）
+     * @param current 实况天气
+     * @return 观测记录
+     */
+    public static Observation of(long time, CurrentWeather current) {
+        return new Observation(time, current.getTemp(), current.getFeels(), current.getDewPt(), current.getRh(),
+                current.getWindSpd(), current.getBaro(), current.getAqi(), current.getVis(), current.getUv(),
+                current.getCloudCover(), current.getRainAmount() == null ? Double.NaN : current.getRainAmount(),
+                Boolean.TRUE.equals(current.getRime()), Boolean.TRUE.equals(current.getFreezingRain()),
+                Boolean.TRUE.equals(current.getSeaOfClouds()), Boolean.TRUE.equals(current.getBlizzard()),
+                Boolean.TRUE.equals(current.getThunder()), Boolean.TRUE.equals(current.getFreezing()),
+                current.getEvaluateWindLevel());
+    }
+}
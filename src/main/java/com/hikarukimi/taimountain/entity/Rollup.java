@@ -0,0 +1,118 @@
+package com.hikarukimi.taimountain.entity;
+
+import lombok.Getter;
+
+/**
+ * 一个时间区间内实况观测的汇总：温度、湿度、风速和降雨量的最小值、最大值与总和。
+ * <p>
+ * 区间的起始时间为 time，长度由所在的汇总层级决定。没有样本的字段为 NaN；
+ * 降雨量单独计数，只统计有降雨量数据的观测。保存总和而不是平均值，多个汇总可以无损地合并。
+ *
+ * @author Hikarukimi
+ */
+@Getter
+public class Rollup {
+
+    /**
+     * 区间起始时间（毫秒时间戳）。
+     */
+    private final long time;
+
+    private int count;
+
+    private double tempMin = Double.NaN;
+    private double tempMax = Double.NaN;
+    private double tempSum;
+
+    private double rhMin = Double.NaN;
+    private double rhMax = Double.NaN;
+    private double rhSum;
+
+    private double windSpdMin = Double.NaN;
+    private double windSpdMax = Double.NaN;
+    private double windSpdSum;
+
+    private int rainCount;
+
+    private double rainMin = Double.NaN;
+    private double rainMax = Double.NaN;
+    private double rainSum;
+
+    public Rollup(long time) {
+        this.time = time;
+    }
+
+    public Rollup(long time, int count,
+                  double tempMin, double tempMax, double tempSum,
+                  double rhMin, double rhMax, double rhSum,
+                  double windSpdMin, double windSpdMax, double windSpdSum,
+                  int rainCount, double rainMin, double rainMax, double rainSum) {
+        this.time = time;
+        this.count = count;
+        this.tempMin = tempMin;
+        this.tempMax = tempMax;
+        this.tempSum = tempSum;
+        this.rhMin = rhMin;
+        this.rhMax = rhMax;
+        this.rhSum = rhSum;
+        this.windSpdMin = windSpdMin;
+        this.windSpdMax = windSpdMax;
+        this.windSpdSum = windSpdSum;
+        this.rainCount = rainCount;
+        this.rainMin = rainMin;
+        this.rainMax = rainMax;
+        this.rainSum = rainSum;
+    }
+
+    /**
+     * 将一条观测计入汇总。
+     *
+     * @param observation 观测记录，时间应落在本区间内
+     */
+    public void add(Observation observation) {
+        boolean first = count == 0;
+        count++;
+        tempMin = first ? observation.getTemp() : Math.min(tempMin, observation.getTemp());
+        tempMax = first ? observation.getTemp() : Math.max(tempMax, observation.getTemp());
+        tempSum += observation.getTemp();
+        rhMin = first ? observation.getRh() : Math.min(rhMin, observation.getRh());
+        rhMax = first ? observation.getRh() : Math.max(rhMax, observation.getRh());
+        rhSum += observation.getRh();
+        windSpdMin = first ? observation.getWindSpd() : Math.min(windSpdMin, observation.getWindSpd());
+        windSpdMax = first ? observation.getWindSpd() : Math.max(windSpdMax, observation.getWindSpd());
+        windSpdSum += observation.getWindSpd();
+
+        double rain = observation.getRainAmount();
+        if (!Double.isNaN(rain)) {
+            boolean firstRain = rainCount == 0;
+            rainCount++;
+            rainMin = firstRain ? rain : Math.min(rainMin, rain);
+            rainMax = firstRain ? rain : Math.max(rainMax, rain);
+            rainSum += rain;
+        }
+    }
+
+    /**
+     * 返回当前状态的副本。
+     */
+    public Rollup copy() {
+        return new Rollup(time, count, tempMin, tempMax, tempSum, rhMin, rhMax, rhSum,
+                windSpdMin, windSpdMax, windSpdSum, rainCount, rainMin, rainMax, rainSum);
+    }
+
+    public double getTempAvg() {
+        return count == 0 ? Double.NaN : tempSum / count;
+    }
+
+    public double getRhAvg() {
+        return count == 0 ? Double.NaN : rhSum / count;
+    }
+
+    public double getWindSpdAvg() {
+        return count == 0 ? Double.NaN : windSpdSum / count;
+    }
+
+    public double getRainAvg() {
+        return rainCount == 0 ? Double.NaN : rainSum / rainCount;
+    }
+}
@@ -0,0 +1,70 @@
+package com.hikarukimi.taimountain.entity;
+
+import lombok.Getter;
+
+import java.util.function.Function;
+
+/**
+ * 某一时刻从上游获取并解析完成的数据快照。
+ * <p>
+ * 快照一经发布便不再修改，多个读者可以在不加锁的情况下共享同一个实例。
+ *
+ * @param <T> 快照承载的数据类型
+ * @author Hikarukimi
+ */
+@Getter
+public class Snapshot<T> {
+
+    /**
+     * 快照数据。
+     */
+    private final T value;
+
+    /**
+     * 获取快照的时间（毫秒时间戳）。
+     */
+    private final long fetchedAt;
+
+    /**
+     * 内容版本，内容相同的两个快照版本相同，可用作 ETag。
+     */
+    private final long version;
+
+    public Snapshot(T value, long fetchedAt, long version) {
+        this.value = value;
+        this.fetchedAt = fetchedAt;
+        this.version = version;
+    }
+
+    /**
+     * 计算快照在给定时间点的年龄。
+     *
+     * @param now 当前毫秒时间戳
+     * @return 快照年龄（毫秒）
+     */
+    public long ageMillis(long now) {
+        return now - fetchedAt;
+    }
+
+    /**
+     * 判断快照在给定有效期内是否仍然新鲜。
+     *
+     * @param ttlMillis 有效期（毫秒）
+     * @param now       当前毫秒时间戳
+     * @return 未过期时返回 true
+     */
+    public boolean isFresh(long ttlMillis, long now) {
+        return ageMillis(now) < ttlMillis;
+    }
+
+    /**
+     * 转换快照数据，保留原来的获取时间和版本。
+     *
+     * @param mapper 转换函数
+     * @param <R>    转换后的数据类型
+     * @return 新的快照
+     */
+    public <R> Snapshot<R> map(Function<? super T, ? extends R> mapper) {
+        return new Snapshot<>(mapper.apply(value), fetchedAt, version);
+    }
+}
@@ -0,0 +1,143 @@
+package com.hikarukimi.taimountain.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个上游主机的熔断器。
+ * <p>
+ * 连续失败达到 failure-threshold 次后进入 OPEN 状态，open-duration 内的请求直接失败，不再访问上游；
+ * 到期后进入 HALF_OPEN 状态，只放行一个探测请求：探测成功则回到 CLOSED，失败则重新进入 OPEN。
+ * 上游故障期间调用方由此快速失败，转而使用缓存中的旧快照，而不是排队等待超时。
+ *
+ * @author Hikarukimi
+ */
+public class CircuitBreaker {
+
+    /**
+     * 熔断器状态。
+     */
+    public enum State {
+
+        /**
+         * 正常放行请求。
+         */
+        CLOSED,
+
+        /**
+         * 只放行一个探测请求。
+         */
+        HALF_OPEN,
+
+        /**
+         * 拒绝所有请求。
+         */
+        OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    /**
+     * HALF_OPEN 状态下是否已有探测请求在进行。
+     */
+    private boolean probing;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder opened = new LongAdder();
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * 申请发起一次请求。
+     *
+     * @return 允许请求时返回 true，调用方随后必须调用 onSuccess 或 onFailure 报告结果
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * 报告一次成功的请求。
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probing = false;
+        state = State.CLOSED;
+    }
+
+    /**
+     * 报告一次失败的请求。
+     */
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        probing = false;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            opened.increment();
+        }
+    }
+
+    /**
+     * 报告一次被取消、没有结果的请求，释放探测名额。
+     */
+    public synchronized void onCancel() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 返回熔断器的当前状态和累计统计。
+     *
+     * @return 状态、连续失败次数、被拒绝的请求数和进入 OPEN 的次数
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state.name());
+        stats.put("consecutiveFailures", consecutiveFailures);
+        stats.put("rejected", rejected.sum());
+        stats.put("opened", opened.sum());
+        return stats;
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * 熔断器处于 OPEN 状态时请求直接以该异常失败，不记录堆栈。
+     */
+    public static class OpenException extends RuntimeException {
+
+        public OpenException(String upstream) {
+            super("Upstream " + upstream + " is unavailable, circuit breaker is open.", null, false, false);
+        }
+    }
+}
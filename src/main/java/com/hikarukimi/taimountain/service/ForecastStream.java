@@ -0,0 +1,262 @@
+package com.hikarukimi.taimountain.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.hikarukimi.taimountain.entity.ForecastColumns;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.entity.WeatherWarning;
+import lombok.Getter;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个地点的推送状态。
+ * <p>
+ * 保存最近一次推送的快照和序号。新快照的指纹与上一次相同时视为没有变化，不做比较也不序列化；
+ * 不同时序号加一，并生成相对上一次的增量帧：
+ * <pre>
+ * {"type":"delta","seq":8,"base":7,
+ *  "current":{"temp":2.0},
+ *  "forecast":{"shift":1,"size":240,"rows":{"239":{...}}},
+ *  "alerts":{"added":[{...}],"removed":["id"]}}
+ * </pre>
+ * current 只包含变化的字段；forecast 先丢弃开头 shift 行、截断或补齐为 size 行，
+ * 再按下标替换 rows 中的行；alerts 先删除 removed 中的 id，再按 id 添加或替换 added 中的预警。
+ * 没有变化的部分省略。完整帧为 {"type":"full","seq":8,"data":{"current":...,"forecast":[...],"alerts":[...]}}。
+ *
+ * @author Hikarukimi
+ */
+public class ForecastStream {
+
+    private ForecastData last;
+
+    private long seq;
+
+    private Frame fullFrame;
+
+    private final LongAdder sent = new LongAdder();
+
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * 发布新的快照。
+     *
+     * @param next 新快照
+     * @return 本次发布的结果；与上一次快照相同时 changed 为 false
+     */
+    public synchronized Update publish(ForecastData next) {
+        if (next == last || (last != null && next.getFingerprint() == last.getFingerprint())) {
+            return new Update(seq, false, null);
+        }
+        if (last == null) {
+            last = next;
+            seq++;
+            fullFrame = null;
+            return new Update(seq, true, null);
+        }
+
+        JSONObject delta = diff(last, next);
+        last = next;
+        if (delta == null) {
+            return new Update(seq, false, null);
+        }
+        seq++;
+        fullFrame = null;
+        JSONObject frame = new JSONObject();
+        frame.put("type", "delta");
+        frame.put("seq", seq);
+        frame.put("base", seq - 1);
+        frame.putAll(delta);
+        return new Update(seq, true, new Frame(frame));
+    }
+
+    /**
+     * 返回当前序号，尚无快照时为 0。
+     */
+    public synchronized long getSeq() {
+        return seq;
+    }
+
+    /**
+     * 返回当前快照的完整帧，同一序号只创建一次。
+     *
+     * @return 完整帧，尚无快照时返回 null
+     */
+    public synchronized Frame getFullFrame() {
+        if (last == null) {
+            return null;
+        }
+        if (fullFrame == null) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("current", last.getCurrent());
+            data.put("forecast", last.getForecast());
+            data.put("alerts", last.getAlerts());
+            JSONObject frame = new JSONObject();
+            frame.put("type", "full");
+            frame.put("seq", seq);
+            frame.put("data", data);
+            fullFrame = new Frame(frame);
+        }
+        return fullFrame;
+    }
+
+    /**
+     * 返回当前快照的 {current, forecast} 帧，供默认模式的会话使用，与 REST 接口共用同一份编码结果。
+     *
+     * @return 完整的 {current, forecast}，尚无快照时返回 null
+     */
+    public synchronized Frame getLegacyFrame() {
+        return last == null ? null : last.getFrame();
+    }
+
+    /**
+     * 记录一次推送的结果。
+     *
+     * @param delivered 是否有会话收到了新帧；为 false 表示本次推送被跳过
+     */
+    public void record(boolean delivered) {
+        (delivered ? sent : suppressed).increment();
+    }
+
+    /**
+     * 返回推送统计。
+     *
+     * @return 当前序号，以及实际推送和因内容未变化而跳过的次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("seq", getSeq());
+        stats.put("sent", sent.sum());
+        stats.put("suppressed", suppressed.sum());
+        return stats;
+    }
+
+    /**
+     * 计算两份快照之间的增量，没有变化时返回 null。
+     */
+    private static JSONObject diff(ForecastData previous, ForecastData next) {
+        JSONObject delta = new JSONObject();
+        JSONObject current = diffCurrent(previous, next);
+        if (!current.isEmpty()) {
+            delta.put("current", current);
+        }
+        JSONObject forecast = diffForecast(previous.getForecast(), next.getForecast());
+        if (forecast != null) {
+            delta.put("forecast", forecast);
+        }
+        JSONObject alerts = diffAlerts(previous.getAlerts(), next.getAlerts());
+        if (alerts != null) {
+            delta.put("alerts", alerts);
+        }
+        return delta.isEmpty() ? null : delta;
+    }
+
+    private static JSONObject diffCurrent(ForecastData previous, ForecastData next) {
+        JSONObject before = (JSONObject) JSON.toJSON(previous.getCurrent());
+        JSONObject after = (JSONObject) JSON.toJSON(next.getCurrent());
+        JSONObject changed = new JSONObject();
+        after.forEach((key, value) -> {
+            if (!Objects.equals(before.get(key), value)) {
+                changed.put(key, value);
+            }
+        });
+        before.keySet().forEach(key -> {
+            if (!after.containsKey(key)) {
+                changed.put(key, null);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * 逐小时预报通常每过一小时整体前移一行，先按第一行的预报时间对齐，再逐行比较。
+     */
+    private static JSONObject diffForecast(ForecastColumns previous, ForecastColumns next) {
+        int shift = next.isEmpty() ? -1 : previous.indexOfCreated(next.getCreated(0));
+        if (shift < 0) {
+            shift = 0;
+        }
+
+        JSONObject rows = new JSONObject();
+        for (int i = 0; i < next.size(); i++) {
+            int j = i + shift;
+            if (j >= previous.size() || !next.rowEquals(i, previous, j)) {
+                rows.put(String.valueOf(i), next.get(i));
+            }
+        }
+        if (shift == 0 && rows.isEmpty() && previous.size() == next.size()) {
+            return null;
+        }
+
+        JSONObject forecast = new JSONObject();
+        forecast.put("shift", shift);
+        forecast.put("size", next.size());
+        forecast.put("rows", rows);
+        return forecast;
+    }
+
+    private static JSONObject diffAlerts(List<WeatherWarning> previous, List<WeatherWarning> next) {
+        Map<String, String> before = new LinkedHashMap<>();
+        for (WeatherWarning alert : previous) {
+            before.put(alert.getId(), JSON.toJSONString(alert));
+        }
+
+        JSONArray added = new JSONArray();
+        Set<String> present = new HashSet<>();
+        for (WeatherWarning alert : next) {
+            present.add(alert.getId());
+            if (!JSON.toJSONString(alert).equals(before.get(alert.getId()))) {
+                added.add(alert);
+            }
+        }
+        JSONArray removed = new JSONArray();
+        for (String id : before.keySet()) {
+            if (!present.contains(id)) {
+                removed.add(id);
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return null;
+        }
+
+        JSONObject alerts = new JSONObject();
+        alerts.put("added", added);
+        alerts.put("removed", removed);
+        return alerts;
+    }
+
+    /**
+     * 一次发布的结果。
+     */
+    @Getter
+    public static class Update {
+
+        /**
+         * 发布后的序号。
+         */
+        private final long seq;
+
+        /**
+         * 快照是否发生变化。
+         */
+        private final boolean changed;
+
+        /**
+         * 相对 seq - 1 的增量帧，首次发布或没有变化时为 null。
+         */
+        private final Frame deltaFrame;
+
+        Update(long seq, boolean changed, Frame deltaFrame) {
+            this.seq = seq;
+            this.changed = changed;
+            this.deltaFrame = deltaFrame;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.hikarukimi.taimountain.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONB;
+import com.alibaba.fastjson2.JSONWriter;
+import com.alibaba.fastjson2.writer.ObjectWriter;
+import com.alibaba.fastjson2.writer.ObjectWriterProvider;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * 一个待推送的 WebSocket 帧。
+ * <p>
+ * 同一帧可能要发给使用不同子协议的会话。文本（JSON）、二进制（fastjson2 JSONB）以及二者的
+ * deflate 压缩结果都在第一次使用时生成并缓存，之后发给同一格式的所有会话都复用同一份结果。
+ * REST 接口把同一份 UTF-8 JSON 字节直接写入响应，不再由消息转换器重新序列化。
+ * 为此 JSON 文本与 Jackson 的输出保持一致：值为 null 的字段照常输出，ZonedDateTime 和 LocalDateTime
+ * 按 ISO-8601 输出，与 Jackson 的 JavaTimeModule 相同（例如 2025-03-16T07:41:00.25Z）；字段顺序可能不同。
+ * 构造后不应再修改 payload。
+ * <p>
+ * 每次编码记录 weather.frame.encode（编码耗时）和 weather.frame.bytes（编码结果大小）指标，按 encoding 区分。
+ *
+ * @author Hikarukimi
+ */
+public class Frame {
+
+    private static final Stats JSON_STATS = new Stats("json");
+    private static final Stats JSONB_STATS = new Stats("jsonb");
+    private static final Stats JSON_DEFLATE_STATS = new Stats("json+deflate");
+    private static final Stats JSONB_DEFLATE_STATS = new Stats("jsonb+deflate");
+
+    private static final JSONWriter.Context JSON_CONTEXT = new JSONWriter.Context(jsonWriterProvider(),
+            JSONWriter.Feature.WriteNulls);
+
+    private final Object payload;
+
+    private String text;
+
+    private byte[] utf8;
+
+    private byte[] binary;
+
+    private byte[] deflatedText;
+
+    private byte[] deflatedBinary;
+
+    public Frame(Object payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * 返回 JSON 文本编码。
+     */
+    public synchronized String getText() {
+        if (text == null) {
+            long start = System.nanoTime();
+            text = JSON.toJSONString(payload, JSON_CONTEXT);
+            long elapsed = System.nanoTime() - start;
+            JSON_STATS.record(getUtf8().length, elapsed);
+        }
+        return text;
+    }
+
+    /**
+     * 返回 JSON 文本的 UTF-8 字节，第一次调用时编码并缓存。
+     */
+    public synchronized byte[] getUtf8() {
+        if (utf8 == null) {
+            utf8 = getText().getBytes(StandardCharsets.UTF_8);
+        }
+        return utf8;
+    }
+
+    /**
+     * 返回 JSONB 二进制编码，客户端可以使用 JSONB.parse 解码。
+     */
+    public synchronized byte[] getBinary() {
+        if (binary == null) {
+            long start = System.nanoTime();
+            binary = JSONB.toBytes(payload, JSONWriter.Feature.WriteNameAsSymbol);
+            JSONB_STATS.record(binary.length, System.nanoTime() - start);
+        }
+        return binary;
+    }
+
+    /**
+     * 返回 UTF-8 JSON 文本的 deflate 压缩结果。
+     */
+    public synchronized byte[] getDeflatedText() {
+        if (deflatedText == null) {
+            byte[] json = getUtf8();
+            long start = System.nanoTime();
+            deflatedText = deflate(json);
+            JSON_DEFLATE_STATS.record(deflatedText.length, System.nanoTime() - start);
+        }
+        return deflatedText;
+    }
+
+    /**
+     * 返回 JSONB 编码的 deflate 压缩结果。
+     */
+    public synchronized byte[] getDeflatedBinary() {
+        if (deflatedBinary == null) {
+            byte[] jsonb = getBinary();
+            long start = System.nanoTime();
+            deflatedBinary = deflate(jsonb);
+            JSONB_DEFLATE_STATS.record(deflatedBinary.length, System.nanoTime() - start);
+        }
+        return deflatedBinary;
+    }
+
+    /**
+     * 以 raw deflate（不带 zlib 头，与 permessage-deflate 相同）压缩一段完整数据。
+     * <p>
+     * 不保留上下文，客户端使用 new Inflater(true) 即可独立解压每一帧。
+     * 每帧只压缩一次，因此使用最高压缩级别。
+     *
+     * @param input 待压缩数据
+     * @return 压缩结果
+     */
+    public static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 返回各编码格式的帧数、平均大小（字节）和平均编码耗时，压缩格式的耗时只包含压缩本身。
+     *
+     * @return 按编码格式区分的统计数据
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("json", JSON_STATS.toMap());
+        stats.put("jsonb", JSONB_STATS.toMap());
+        stats.put("json+deflate", JSON_DEFLATE_STATS.toMap());
+        stats.put("jsonb+deflate", JSONB_DEFLATE_STATS.toMap());
+        return stats;
+    }
+
+    /**
+     * JSON 文本使用的序列化配置，日期时间类型的格式与 Jackson 的 JavaTimeModule 一致。
+     */
+    private static ObjectWriterProvider jsonWriterProvider() {
+        ObjectWriterProvider provider = new ObjectWriterProvider();
+        provider.register(ZonedDateTime.class, isoWriter(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+        provider.register(LocalDateTime.class, isoWriter(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        return provider;
+    }
+
+    private static ObjectWriter<Object> isoWriter(DateTimeFormatter formatter) {
+        return (jsonWriter, object, fieldName, fieldType, features) -> {
+            if (object == null) {
+                jsonWriter.writeNull();
+            } else {
+                jsonWriter.writeString(formatter.format((TemporalAccessor) object));
+            }
+        };
+    }
+
+    private static class Stats {
+
+        private final LongAdder frames = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+
+        private final Timer timer;
+        private final DistributionSummary size;
+
+        Stats(String encoding) {
+            // Frame 不是 Spring 管理的对象，指标注册到全局注册表，Spring Boot 会把 Prometheus 注册表加入其中
+            this.timer = Timer.builder("weather.frame.encode")
+                    .description("Time to encode a WebSocket frame, compression only for deflate encodings")
+                    .tag("encoding", encoding)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(1))
+                    .register(Metrics.globalRegistry);
+            this.size = DistributionSummary.builder("weather.frame.bytes")
+                    .description("Encoded WebSocket frame size")
+                    .baseUnit("bytes")
+                    .tag("encoding", encoding)
+                    .register(Metrics.globalRegistry);
+        }
+
+        void record(long size, long elapsedNanos) {
+            frames.increment();
+            bytes.add(size);
+            nanos.add(elapsedNanos);
+            this.timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            this.size.record(size);
+        }
+
+        Map<String, Object> toMap() {
+            long count = frames.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("frames", count);
+            map.put("bytes", bytes.sum());
+            map.put("avgBytes", count == 0 ? 0 : bytes.sum() / count);
+            map.put("avgEncodeMicros", count == 0 ? 0 : nanos.sum() / count / 1000);
+            return map;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.config.WeatherProperties;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲请求（hedged request）的触发策略。
+ * <p>
+ * 记录最近 SAMPLES 次首个请求的耗时，按配置的分位数（如 p95）计算对冲延迟：首个请求超过该时间仍未返回时，
+ * 再发出一个相同的请求，取先返回的结果。被取消的首个请求按取消时已经过的时间记录，
+ * 否则慢请求总是被对冲取消、从不进入样本，分位数会逐渐偏低，对冲越来越频繁。
+ * <p>
+ * 对冲次数由令牌桶限制：每个请求积累 max-rate 个令牌，每次对冲消耗一个，桶容量为 BURST，
+ * 上游整体变慢时对冲请求最多占请求总数的 max-rate，不会成倍放大上游负载。
+ *
+ * @author Hikarukimi
+ */
+class HedgePolicy {
+
+    private static final int SAMPLES = 256;
+
+    /**
+     * 样本数不足时不对冲，分位数还不可信。
+     */
+    private static final int MIN_SAMPLES = 32;
+
+    /**
+     * 每积累 RECOMPUTE_EVERY 个新样本重新计算一次延迟。
+     */
+    private static final int RECOMPUTE_EVERY = 16;
+
+    private static final double BURST = 10;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final double maxRate;
+
+    private final long[] samples = new long[SAMPLES];
+
+    private int count;
+
+    private int sinceRecompute;
+
+    private double tokens;
+
+    /**
+     * 当前的对冲延迟（纳秒），样本不足时为 -1。
+     */
+    private volatile long delayNanos = -1;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder wins = new LongAdder();
+
+    HedgePolicy(WeatherProperties.Hedge hedge) {
+        this.percentile = Math.min(Math.max(hedge.getPercentile(), 0.5), 0.999);
+        this.minDelayNanos = hedge.getMinDelay().toNanos();
+        this.maxRate = Math.min(Math.max(hedge.getMaxRate(), 0.0), 1.0);
+    }
+
+    /**
+     * 发起一个请求，积累对冲令牌。
+     *
+     * @return 对冲延迟（纳秒），样本不足时为 -1，表示本次不对冲
+     */
+    synchronized long onRequest() {
+        requests.increment();
+        tokens = Math.min(BURST, tokens + maxRate);
+        return delayNanos;
+    }
+
+    /**
+     * 首个请求超过对冲延迟仍未返回时调用，令牌不足时拒绝对冲。
+     *
+     * @return 允许发出对冲请求时返回 true
+     */
+    synchronized boolean tryHedge() {
+        if (tokens < 1) {
+            throttled.increment();
+            return false;
+        }
+        tokens -= 1;
+        hedged.increment();
+        return true;
+    }
+
+    /**
+     * 对冲请求先于首个请求返回。
+     */
+    void onHedgeWin() {
+        wins.increment();
+    }
+
+    /**
+     * 记录首个请求的耗时。
+     *
+     * @param nanos 成功返回或被取消时已经过的时间
+     */
+    synchronized void record(long nanos) {
+        samples[count % SAMPLES] = nanos;
+        count++;
+        // 样本刚够 MIN_SAMPLES 时立即计算一次，之后每 RECOMPUTE_EVERY 个新样本计算一次
+        if (count == MIN_SAMPLES || (count > MIN_SAMPLES && ++sinceRecompute >= RECOMPUTE_EVERY)) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, Math.min(count, SAMPLES));
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+            delayNanos = Math.max(minDelayNanos, sorted[index]);
+        }
+    }
+
+    long getHedged() {
+        return hedged.sum();
+    }
+
+    long getWins() {
+        return wins.sum();
+    }
+
+    long getThrottled() {
+        return throttled.sum();
+    }
+
+    double getDelayMillis() {
+        long delay = delayNanos;
+        return delay < 0 ? Double.NaN : delay / 1e6;
+    }
+
+    /**
+     * 返回当前的对冲延迟和累计次数。
+     *
+     * @return 对冲延迟（毫秒）、请求数、对冲数、对冲胜出数和因令牌不足被拒绝的对冲数
+     */
+    Map<String, Object> getStats() {
+        long delay = delayNanos;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("delayMs", delay < 0 ? null : TimeUnit.NANOSECONDS.toMillis(delay));
+        stats.put("requests", requests.sum());
+        stats.put("hedged", hedged.sum());
+        stats.put("wins", wins.sum());
+        stats.put("throttled", throttled.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,34 @@
+package com.hikarukimi.taimountain.service;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 历史记录的定长二进制格式。
+ * <p>
+ * 每种记录有自己的文件标识和记录长度，HistorySegment 打开文件时据此校验格式。
+ * 读写都使用绝对位置，不改变 ByteBuffer 的 position。
+ *
+ * @param <T> 记录类型
+ * @author Hikarukimi
+ */
+interface HistoryCodec<T> {
+
+    /**
+     * 写在段文件头部的格式标识。
+     */
+    int magic();
+
+    /**
+     * 单条记录的字节数。
+     */
+    int recordSize();
+
+    /**
+     * 记录的时间（毫秒时间戳），同一个段中按时间递增排列。
+     */
+    long time(T record);
+
+    void write(ByteBuffer buffer, int offset, T record);
+
+    T read(ByteBuffer buffer, int offset);
+}
@@ -0,0 +1,61 @@
+package com.hikarukimi.taimountain.service;
+
+import java.time.Duration;
+
+/**
+ * 历史记录的存储层级：原始观测，以及按小时、按天的汇总。
+ * <p>
+ * 汇总区间按东八区对齐，按天的区间从当地 0 点开始。
+ *
+ * @author Hikarukimi
+ */
+public enum HistoryResolution {
+
+    RAW(0),
+
+    HOUR(Duration.ofHours(1).toMillis()),
+
+    DAY(Duration.ofDays(1).toMillis());
+
+    private static final long ZONE_OFFSET_MILLIS = Duration.ofHours(8).toMillis();
+
+    /**
+     * 区间长度（毫秒），原始观测为 0。
+     */
+    private final long millis;
+
+    HistoryResolution(long millis) {
+        this.millis = millis;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    /**
+     * 返回 time 所在区间的起始时间。
+     */
+    public long bucketStart(long time) {
+        if (millis == 0) {
+            return time;
+        }
+        return Math.floorDiv(time + ZONE_OFFSET_MILLIS, millis) * millis - ZONE_OFFSET_MILLIS;
+    }
+
+    /**
+     * 返回区间长度不超过 requested 的最粗层级，requested 小于一小时时返回 RAW。
+     *
+     * @param requested 调用方需要的时间分辨率
+     * @return 存储层级
+     */
+    public static HistoryResolution coarsest(Duration requested) {
+        long millis = requested.toMillis();
+        HistoryResolution result = RAW;
+        for (HistoryResolution resolution : values()) {
+            if (resolution.millis <= millis) {
+                result = resolution;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,250 @@
+package com.hikarukimi.taimountain.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * 一个内存映射的历史记录段文件。
+ * <p>
+ * 文件由 64 字节的文件头和 capacity 条定长记录组成，记录格式由 HistoryCodec 决定。创建时一次性映射整个文件，
+ * 追加只是写入映射内存，读取时按需访问，不会把整个文件读入堆内存。文件头记录已写入的条数，记录写完后才更新条数，
+ * 进程意外退出后重新打开只会丢失最后一条尚未计数的记录。
+ * <p>
+ * 记录按时间递增追加。每 INDEX_STRIDE 条记录的时间保存在一个稀疏索引中，
+ * 查询时先在索引上二分定位起始块，再顺序扫描到结束时间为止。
+ * <p>
+ * 同一时刻只允许一个线程追加；查询可以与追加并发进行，只会看到计数已更新的记录。
+ *
+ * @param <T> 记录类型
+ * @author Hikarukimi
+ */
+final class HistorySegment<T> implements Closeable {
+
+    private static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int INDEX_STRIDE = 64;
+
+    private static final int COUNT_OFFSET = 16;
+
+    private final Path path;
+
+    private final HistoryCodec<T> codec;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer mapped;
+
+    private final ByteBuffer buffer;
+
+    private final int recordSize;
+
+    private final int capacity;
+
+    /**
+     * 第 i * INDEX_STRIDE 条记录的时间。
+     */
+    private final long[] index;
+
+    private volatile int count;
+
+    private HistorySegment(Path path, HistoryCodec<T> codec, FileChannel channel, MappedByteBuffer mapped, int capacity) {
+        this.path = path;
+        this.codec = codec;
+        this.channel = channel;
+        this.mapped = mapped;
+        this.buffer = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.recordSize = codec.recordSize();
+        this.capacity = capacity;
+        this.index = new long[(capacity + INDEX_STRIDE - 1) / INDEX_STRIDE];
+    }
+
+    /**
+     * 单个段最多容纳的记录条数，映射大小不能超过 2GB。
+     */
+    static int maxCapacity(HistoryCodec<?> codec) {
+        return (Integer.MAX_VALUE - HEADER_SIZE) / codec.recordSize();
+    }
+
+    /**
+     * 创建一个新的段文件。
+     *
+     * @param path     文件路径，文件不能已存在
+     * @param codec    记录格式
+     * @param capacity 最多容纳的记录条数
+     * @return 空的段
+     */
+    static <T> HistorySegment<T> create(Path path, HistoryCodec<T> codec, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = HEADER_SIZE + (long) capacity * codec.recordSize();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            HistorySegment<T> segment = new HistorySegment<>(path, codec, channel, mapped, capacity);
+            segment.buffer.putInt(0, codec.magic());
+            segment.buffer.putInt(4, VERSION);
+            segment.buffer.putInt(8, codec.recordSize());
+            segment.buffer.putInt(12, capacity);
+            segment.buffer.putInt(COUNT_OFFSET, 0);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的段文件，并根据其中的记录重建稀疏索引。
+     *
+     * @param path  文件路径
+     * @param codec 记录格式
+     * @return 段
+     * @throws IOException 文件无法读取或格式与 codec 不符时
+     */
+    static <T> HistorySegment<T> open(Path path, HistoryCodec<T> codec) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Segment file is truncated: " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = header.getInt(12);
+            int count = header.getInt(COUNT_OFFSET);
+            long size = HEADER_SIZE + (long) capacity * codec.recordSize();
+            if (header.getInt(0) != codec.magic() || header.getInt(4) != VERSION || header.getInt(8) != codec.recordSize()
+                    || capacity <= 0 || capacity > maxCapacity(codec) || count < 0 || count > capacity
+                    || channel.size() < size) {
+                throw new IOException("Unrecognized segment file: " + path);
+            }
+
+            HistorySegment<T> segment = new HistorySegment<>(path, codec, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), capacity);
+            for (int i = 0; i < count; i += INDEX_STRIDE) {
+                segment.index[i / INDEX_STRIDE] = segment.timeAt(i);
+            }
+            segment.count = count;
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 追加一条记录，调用方需保证时间不早于上一条记录。
+     *
+     * @param record 记录
+     * @return 段已满时返回 false
+     */
+    boolean append(T record) {
+        int n = count;
+        if (n >= capacity) {
+            return false;
+        }
+        codec.write(buffer, HEADER_SIZE + n * recordSize, record);
+        if (n % INDEX_STRIDE == 0) {
+            index[n / INDEX_STRIDE] = codec.time(record);
+        }
+        buffer.putInt(COUNT_OFFSET, n + 1);
+        count = n + 1;
+        return true;
+    }
+
+    /**
+     * 按时间顺序读取 [from, to] 范围内的记录。
+     *
+     * @param from     起始时间（包含）
+     * @param to       结束时间（包含）
+     * @param consumer 接收每条记录
+     */
+    void scan(long from, long to, Consumer<? super T> consumer) {
+        int n = count;
+        for (int i = startIndex(from, n); i < n; i++) {
+            long time = timeAt(i);
+            if (time > to) {
+                return;
+            }
+            if (time >= from) {
+                consumer.accept(codec.read(buffer, HEADER_SIZE + i * recordSize));
+            }
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    /**
+     * 第一条记录的时间，段为空时返回 Long.MAX_VALUE。
+     */
+    long firstTime() {
+        return count == 0 ? Long.MAX_VALUE : timeAt(0);
+    }
+
+    /**
+     * 最后一条记录的时间，段为空时返回 Long.MIN_VALUE。
+     */
+    long lastTime() {
+        int n = count;
+        return n == 0 ? Long.MIN_VALUE : timeAt(n - 1);
+    }
+
+    long fileSize() {
+        return HEADER_SIZE + (long) capacity * recordSize;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * 将映射内存中的修改写回磁盘。
+     */
+    void force() {
+        mapped.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * 返回第一条时间可能不早于 from 的记录下标：在稀疏索引中找到最后一个时间早于 from 的块。
+     */
+    private int startIndex(long from, int n) {
+        int blocks = (n + INDEX_STRIDE - 1) / INDEX_STRIDE;
+        int low = 0;
+        int high = blocks - 1;
+        int block = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] < from) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return block * INDEX_STRIDE;
+    }
+
+    /**
+     * 所有记录格式都以 8 字节的时间开头。
+     */
+    private long timeAt(int i) {
+        return buffer.getLong(HEADER_SIZE + i * recordSize);
+    }
+}
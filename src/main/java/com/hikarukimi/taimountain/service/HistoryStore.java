@@ -0,0 +1,277 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.CurrentWeather;
+import com.hikarukimi.taimountain.entity.Observation;
+import com.hikarukimi.taimountain.entity.Rollup;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 按地点保存实况观测记录的只追加时间序列存储。
+ * <p>
+ * 每个地点一个目录（weather.history.dir/地点名），原始观测保存在该目录下按序号命名的段文件中，格式见 HistorySegment。
+ * 每次从上游获取到新快照时追加一条记录，created 没有前进的快照不重复保存。
+ * <p>
+ * 追加观测的同时增量维护按小时和按天的汇总层级，分别保存在地点目录的 hour、day 子目录中。
+ * 尚未结束的区间保存在内存中，区间结束后才写入文件；重启时从原始观测中重建未结束的区间，
+ * 缺失的汇总（例如升级前已有的原始观测）也在此时补齐。
+ * <p>
+ * 查询只访问与时间范围重叠的段，记录从映射内存中逐条读出并交给调用方，不会整体加载到堆内存。
+ * 已有数据的地点在启动时打开，查询不会打开或创建任何文件；地点的目录在第一次追加时才创建。
+ *
+ * @author Hikarukimi
+ */
+@Slf4j
+@Component
+public class HistoryStore {
+
+    private static final HistoryResolution[] TIERS = {HistoryResolution.HOUR, HistoryResolution.DAY};
+
+    private final boolean enabled;
+
+    private final Path dir;
+
+    private final int segmentRecords;
+
+    private final ConcurrentHashMap<UrlConstant, LocationHistory> histories = new ConcurrentHashMap<>();
+
+    @Autowired
+    public HistoryStore(WeatherProperties weatherProperties) {
+        WeatherProperties.History history = weatherProperties.getHistory();
+        this.enabled = history.isEnabled();
+        this.dir = history.getDir();
+        this.segmentRecords = history.getSegmentRecords();
+        if (enabled) {
+            for (UrlConstant location : UrlConstant.values()) {
+                if (location.isForecast() && Files.isDirectory(dir.resolve(location.name()))) {
+                    try {
+                        history(location);
+                    } catch (UncheckedIOException e) {
+                        log.warn("[history] 打开历史记录失败：location={}，message={}", location, e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 追加一条实况观测。时间不晚于该地点最后一条记录时忽略；写入失败只记录日志，不影响调用方。
+     *
+     * @param location 地点
+     * @param current  实况天气
+     * @return 是否写入了新记录
+     */
+    public boolean append(UrlConstant location, CurrentWeather current) {
+        if (!enabled) {
+            return false;
+        }
+        long time;
+        try {
+            time = OffsetDateTime.parse(current.getCreated()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException | NullPointerException e) {
+            log.warn("[history] 无法解析观测时间：location={}，created={}", location, current.getCreated());
+            return false;
+        }
+        try {
+            return history(location).append(Observation.of(time, current));
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("[history] 写入观测记录失败：location={}，message={}", location, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 按时间顺序读取指定地点 [from, to] 范围内的观测记录。
+     *
+     * @param location 地点
+     * @param from     起始时间（毫秒时间戳，包含）
+     * @param to       结束时间（毫秒时间戳，包含）
+     * @param consumer 接收每条记录
+     */
+    public void query(UrlConstant location, long from, long to, Consumer<Observation> consumer) {
+        LocationHistory history = histories.get(location);
+        if (!enabled || from > to || history == null) {
+            return;
+        }
+        history.raw.query(from, to, consumer);
+    }
+
+    /**
+     * 按时间顺序读取指定地点的汇总记录，包含与 [from, to] 重叠的所有区间，最后一个区间可能尚未结束。
+     *
+     * @param location   地点
+     * @param resolution 汇总层级，不能是 RAW
+     * @param from       起始时间（毫秒时间戳）
+     * @param to         结束时间（毫秒时间戳，包含）
+     * @param consumer   接收每条汇总
+     */
+    public void queryRollups(UrlConstant location, HistoryResolution resolution, long from, long to, Consumer<Rollup> consumer) {
+        if (resolution == HistoryResolution.RAW) {
+            throw new IllegalArgumentException("RAW is not a rollup tier");
+        }
+        LocationHistory history = histories.get(location);
+        if (!enabled || from > to || history == null) {
+            return;
+        }
+        history.tier(resolution).query(resolution.bucketStart(from), to, consumer);
+    }
+
+    /**
+     * 返回各地点每个层级的段数、记录数、时间范围和文件总大小。
+     *
+     * @return 按地点区分的统计数据
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        histories.forEach((location, history) -> stats.put(location.name(), history.toMap()));
+        return stats;
+    }
+
+    /**
+     * 关闭所有段文件，并将尚未写回的修改刷到磁盘。
+     */
+    @PreDestroy
+    public void close() {
+        histories.values().forEach(LocationHistory::close);
+    }
+
+    private LocationHistory history(UrlConstant location) {
+        return histories.computeIfAbsent(location, key -> {
+            try {
+                return new LocationHistory(dir.resolve(key.name()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * 单个地点的原始观测和各汇总层级。
+     */
+    private class LocationHistory {
+
+        private final SegmentLog<Observation> raw;
+
+        private final Tier[] tiers = new Tier[TIERS.length];
+
+        LocationHistory(Path dir) throws IOException {
+            this.raw = SegmentLog.open(dir, ObservationCodec.INSTANCE, segmentRecords);
+            for (int i = 0; i < TIERS.length; i++) {
+                HistoryResolution resolution = TIERS[i];
+                Tier tier = new Tier(resolution, SegmentLog.open(dir.resolve(resolution.name().toLowerCase(Locale.ROOT)),
+                        RollupCodec.INSTANCE, segmentRecords));
+                // 从最后一个已保存区间之后的原始观测重建未结束的区间
+                long last = tier.log.lastTime();
+                long from = last == Long.MIN_VALUE ? Long.MIN_VALUE : last + resolution.getMillis();
+                IOException[] failure = new IOException[1];
+                raw.query(from, Long.MAX_VALUE, observation -> {
+                    try {
+                        tier.add(observation);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+                tiers[i] = tier;
+            }
+        }
+
+        synchronized boolean append(Observation observation) throws IOException {
+            if (!raw.append(observation)) {
+                return false;
+            }
+            for (Tier tier : tiers) {
+                tier.add(observation);
+            }
+            return true;
+        }
+
+        Tier tier(HistoryResolution resolution) {
+            for (Tier tier : tiers) {
+                if (tier.resolution == resolution) {
+                    return tier;
+                }
+            }
+            throw new IllegalArgumentException("Unknown rollup tier: " + resolution);
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>(raw.toMap());
+            for (Tier tier : tiers) {
+                map.put(tier.resolution.name().toLowerCase(Locale.ROOT), tier.log.toMap());
+            }
+            return map;
+        }
+
+        void close() {
+            raw.close();
+            for (Tier tier : tiers) {
+                tier.log.close();
+            }
+        }
+
+        /**
+         * 一个汇总层级：已结束的区间保存在文件中，当前区间保存在内存中。
+         */
+        private class Tier {
+
+            private final HistoryResolution resolution;
+
+            private final SegmentLog<Rollup> log;
+
+            /**
+             * 当前尚未结束的区间，只在持有 LocationHistory 锁时修改。
+             */
+            private Rollup open;
+
+            Tier(HistoryResolution resolution, SegmentLog<Rollup> log) {
+                this.resolution = resolution;
+                this.log = log;
+            }
+
+            void add(Observation observation) throws IOException {
+                long bucket = resolution.bucketStart(observation.getTime());
+                if (open != null && open.getTime() != bucket) {
+                    log.append(open);
+                    open = null;
+                }
+                if (open == null) {
+                    open = new Rollup(bucket);
+                }
+                open.add(observation);
+            }
+
+            void query(long from, long to, Consumer<Rollup> consumer) {
+                // 先取当前区间的副本，再读取它之前的已保存区间，查询期间区间结束也不会重复或遗漏
+                Rollup current;
+                synchronized (LocationHistory.this) {
+                    current = open == null ? null : open.copy();
+                }
+                long end = current == null ? to : Math.min(to, current.getTime() - 1);
+                log.query(from, end, consumer);
+                if (current != null && current.getTime() >= from && current.getTime() <= to) {
+                    consumer.accept(current);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.entity.Observation;
+import com.hikarukimi.taimountain.entity.WindLevel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 实况观测记录的存储格式，每条 104 字节：时间、11 个数值字段、危险天气标志位和风力等级序号。
+ *
+ * @author Hikarukimi
+ */
+final class ObservationCodec implements HistoryCodec<Observation> {
+
+    static final ObservationCodec INSTANCE = new ObservationCodec();
+
+    /**
+     * "TMHS"。
+     */
+    private static final int MAGIC = 0x544D4853;
+
+    private static final int RECORD_SIZE = 104;
+
+    private static final WindLevel[] WIND_LEVELS = WindLevel.values();
+
+    private static final int RIME = 1;
+    private static final int FREEZING_RAIN = 1 << 1;
+    private static final int SEA_OF_CLOUDS = 1 << 2;
+    private static final int BLIZZARD = 1 << 3;
+    private static final int THUNDER = 1 << 4;
+    private static final int FREEZING = 1 << 5;
+
+    private ObservationCodec() {
+    }
+
+    @Override
+    public int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    public int recordSize() {
+        return RECORD_SIZE;
+    }
+
+    @Override
+    public long time(Observation observation) {
+        return observation.getTime();
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, int offset, Observation observation) {
+        buffer.putLong(offset, observation.getTime());
+        buffer.putDouble(offset + 8, observation.getTemp());
+        buffer.putDouble(offset + 16, observation.getFeels());
+        buffer.putDouble(offset + 24, observation.getDewPt());
+        buffer.putDouble(offset + 32, observation.getRh());
+        buffer.putDouble(offset + 40, observation.getWindSpd());
+        buffer.putDouble(offset + 48, observation.getBaro());
+        buffer.putDouble(offset + 56, observation.getAqi());
+        buffer.putDouble(offset + 64, observation.getVis());
+        buffer.putDouble(offset + 72, observation.getUv());
+        buffer.putDouble(offset + 80, observation.getCloudCover());
+        buffer.putDouble(offset + 88, observation.getRainAmount());
+        buffer.putInt(offset + 96, flags(observation));
+        buffer.putInt(offset + 100, observation.getWindLevel() == null ? -1 : observation.getWindLevel().ordinal());
+    }
+
+    @Override
+    public Observation read(ByteBuffer buffer, int offset) {
+        int flags = buffer.getInt(offset + 96);
+        int windLevel = buffer.getInt(offset + 100);
+        return new Observation(buffer.getLong(offset),
+                buffer.getDouble(offset + 8), buffer.getDouble(offset + 16), buffer.getDouble(offset + 24),
+                buffer.getDouble(offset + 32), buffer.getDouble(offset + 40), buffer.getDouble(offset + 48),
+                buffer.getDouble(offset + 56), buffer.getDouble(offset + 64), buffer.getDouble(offset + 72),
+                buffer.getDouble(offset + 80), buffer.getDouble(offset + 88),
+                (flags & RIME) != 0, (flags & FREEZING_RAIN) != 0, (flags & SEA_OF_CLOUDS) != 0,
+                (flags & BLIZZARD) != 0, (flags & THUNDER) != 0, (flags & FREEZING) != 0,
+                windLevel >= 0 && windLevel < WIND_LEVELS.length ? WIND_LEVELS[windLevel] : null);
+    }
+
+    private static int flags(Observation observation) {
+        return (observation.isRime() ? RIME : 0)
+                | (observation.isFreezingRain() ? FREEZING_RAIN : 0)
+                | (observation.isSeaOfClouds() ? SEA_OF_CLOUDS : 0)
+                | (observation.isBlizzard() ? BLIZZARD : 0)
+                | (observation.isThunder() ? THUNDER : 0)
+                | (observation.isFreezing() ? FREEZING : 0);
+    }
+}
@@ -0,0 +1,307 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.controller.WebSocket;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 按需刷新上游天气预报的调度器。
+ * <p>
+ * 只刷新有 WebSocket 订阅者、或在 weather.refresh.demand-window 内被 REST 接口请求过的地点，
+ * 没有人关注的地点不会请求上游。每个地点有独立的刷新间隔：上游快照的 created 时间前进时，
+ * 间隔回到 min-interval；没有前进或请求失败时间隔加倍，直到 max-interval。
+ * 每次的到期时间叠加 ±jitter 的随机抖动，各地点的上游请求不会集中在同一时刻。
+ * 刷新得到的快照随即交给 WebSocket 推送。刷新总是等待上游结果，不使用过期快照：
+ * 上游故障或熔断时刷新以失败结束并退避，WebSocket 客户端保留最近一次收到的数据。
+ * <p>
+ * 同一次检查中到期的地点同时发起刷新，各自在上游返回并解析完成后立即推送，不等待其他地点；
+ * 这些刷新共用 weather.refresh.deadline 截止时间，一个地点的上游变慢不会拖住其他地点，也不会无限期占用刷新名额。
+ * <p>
+ * weather.refresh.tick 指标记录每次检查的耗时，weather.refresh.cycle 记录每个地点从发起刷新到推送完成的耗时，
+ * 按 location 和 outcome（success / error / timeout）区分。
+ *
+ * @author Hikarukimi
+ */
+@Slf4j
+@Component
+public class RefreshScheduler {
+
+    private final WeatherService weatherService;
+
+    private final WebSocket webSocket;
+
+    private final long minIntervalMillis;
+
+    private final long maxIntervalMillis;
+
+    private final double jitter;
+
+    private final long demandWindowMillis;
+
+    private final long deadlineNanos;
+
+    private final ConcurrentHashMap<UrlConstant, Target> targets = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer tickTimer;
+
+    @Autowired
+    public RefreshScheduler(WeatherService weatherService, WebSocket webSocket, WeatherProperties weatherProperties,
+                            MeterRegistry meterRegistry) {
+        WeatherProperties.Refresh refresh = weatherProperties.getRefresh();
+        this.weatherService = weatherService;
+        this.webSocket = webSocket;
+        this.meterRegistry = meterRegistry;
+        this.tickTimer = Timer.builder("weather.refresh.tick")
+                .description("Time to check all locations and start the due refreshes")
+                .register(meterRegistry);
+        this.minIntervalMillis = refresh.getMinInterval().toMillis();
+        this.maxIntervalMillis = Math.max(minIntervalMillis, refresh.getMaxInterval().toMillis());
+        this.jitter = Math.min(Math.max(refresh.getJitter(), 0.0), 1.0);
+        this.demandWindowMillis = refresh.getDemandWindow().toMillis();
+        this.deadlineNanos = refresh.getDeadline().toNanos();
+    }
+
+    /**
+     * 记录一个 WebSocket 订阅者，无效的 location 被忽略。
+     *
+     * @param location 地点
+     */
+    public void subscribe(String location) {
+        Target target = target(location);
+        if (target != null) {
+            target.subscribe(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 移除一个 WebSocket 订阅者。
+     *
+     * @param location 地点
+     */
+    public void unsubscribe(String location) {
+        Target target = target(location);
+        if (target != null) {
+            target.unsubscribe();
+        }
+    }
+
+    /**
+     * 记录一次 REST 请求，该地点在 demand-window 内保持刷新。
+     *
+     * @param location 地点
+     */
+    public void recordDemand(String location) {
+        Target target = target(location);
+        if (target != null) {
+            target.demand(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 刷新所有已到期且仍有需求的地点，由 ScheduleService 每秒调用一次。
+     * <p>
+     * 上游请求异步进行，不阻塞调用线程；同一地点上一次刷新完成前不会再次发起。
+     * 本次发起的刷新共用同一个截止时间。
+     */
+    public void tick() {
+        long start = System.nanoTime();
+        long deadline = start + deadlineNanos;
+        long now = System.currentTimeMillis();
+        targets.forEach((location, target) -> {
+            if (target.claim(now)) {
+                refresh(location, target, deadline);
+            }
+        });
+        tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 返回各地点的刷新状态。
+     *
+     * @return 按地点区分的订阅者数、当前间隔、距下次刷新的时间以及刷新和 created 前进的次数
+     */
+    public Map<String, Object> getStats() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> stats = new TreeMap<>();
+        targets.forEach((location, target) -> stats.put(location.name(), target.toMap(now)));
+        return stats;
+    }
+
+    private void refresh(UrlConstant location, Target target, long deadline) {
+        long start = System.nanoTime();
+        weatherService.revalidateForecast(location)
+                .timeout(Duration.ofNanos(Math.max(0, deadline - start)))
+                .subscribe(snapshot -> {
+                    target.observe(snapshot, System.currentTimeMillis());
+                    webSocket.push(location.name(), snapshot.getValue());
+                    cycleTimer(location, "success").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }, e -> {
+                    target.fail(System.currentTimeMillis());
+                    boolean timeout = e instanceof TimeoutException;
+                    cycleTimer(location, timeout ? "timeout" : "error").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    if (timeout) {
+                        log.warn("[refresh] 刷新天气预报超时：location={}，deadline={}ms", location, deadlineNanos / 1_000_000);
+                    } else {
+                        log.warn("[refresh] 刷新天气预报失败：location={}，message={}", location, e.getMessage());
+                    }
+                });
+    }
+
+    private Timer cycleTimer(UrlConstant location, String outcome) {
+        return Timer.builder("weather.refresh.cycle")
+                .description("Time from starting a refresh to finishing the WebSocket push")
+                .tags("location", location.name(), "outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(5))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+
+    private Target target(String location) {
+        UrlConstant key;
+        try {
+            key = UrlConstant.forecastOf(location);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return targets.computeIfAbsent(key, k -> new Target());
+    }
+
+    private long jittered(long interval) {
+        double offset = jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(1000L, Math.round(interval * (1 + offset)));
+    }
+
+    /**
+     * 单个地点的刷新状态。
+     */
+    private class Target {
+
+        private int subscribers;
+
+        private long lastDemand;
+
+        private long interval = minIntervalMillis;
+
+        private long nextDue;
+
+        private boolean refreshing;
+
+        /**
+         * 最近一次观察到的快照获取时间，用于区分新的上游数据和命中缓存的旧快照。
+         */
+        private long lastFetchedAt;
+
+        private String lastCreated;
+
+        private long refreshes;
+
+        private long advances;
+
+        synchronized void subscribe(long now) {
+            boolean idle = !isDemanded(now);
+            subscribers++;
+            // 连接时已获取过一次数据，从现在起按最短间隔刷新
+            if (idle) {
+                activate(now);
+            }
+        }
+
+        synchronized void unsubscribe() {
+            subscribers = Math.max(0, subscribers - 1);
+        }
+
+        synchronized void demand(long now) {
+            if (!isDemanded(now)) {
+                activate(now);
+            }
+            lastDemand = now;
+        }
+
+        /**
+         * 到期且仍有需求时占用本次刷新，返回 true 表示调用方应发起刷新。
+         */
+        synchronized boolean claim(long now) {
+            if (refreshing || now < nextDue || !isDemanded(now)) {
+                return false;
+            }
+            refreshing = true;
+            refreshes++;
+            return true;
+        }
+
+        synchronized void observe(Snapshot<ForecastData> snapshot, long now) {
+            refreshing = false;
+            if (snapshot.getFetchedAt() != lastFetchedAt) {
+                lastFetchedAt = snapshot.getFetchedAt();
+                String created = snapshot.getValue().getCurrent().getCreated();
+                if (!Objects.equals(created, lastCreated)) {
+                    lastCreated = created;
+                    advances++;
+                    interval = minIntervalMillis;
+                } else {
+                    backOff();
+                }
+            }
+            // 从快照的获取时间起算，命中缓存时不会把刷新推迟一个完整的间隔
+            nextDue = Math.max(now + 1000L, snapshot.getFetchedAt() + jittered(interval));
+        }
+
+        synchronized void fail(long now) {
+            refreshing = false;
+            backOff();
+            schedule(now);
+        }
+
+        synchronized Map<String, Object> toMap(long now) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("subscribers", subscribers);
+            map.put("active", isDemanded(now));
+            map.put("intervalSeconds", interval / 1000);
+            map.put("nextRefreshInSeconds", Math.max(0, nextDue - now) / 1000);
+            map.put("refreshes", refreshes);
+            map.put("advances", advances);
+            map.put("lastCreated", lastCreated);
+            return map;
+        }
+
+        private boolean isDemanded(long now) {
+            return subscribers > 0 || (lastDemand != 0 && now - lastDemand <= demandWindowMillis);
+        }
+
+        private void backOff() {
+            interval = Math.min(interval * 2, maxIntervalMillis);
+        }
+
+        /**
+         * 地点从空闲转为有需求：空闲期间退避得到的间隔不再适用，回到最短间隔并从现在起重新计时。
+         */
+        private void activate(long now) {
+            interval = minIntervalMillis;
+            schedule(now);
+        }
+
+        private void schedule(long now) {
+            nextDue = now + jittered(interval);
+        }
+    }
+}
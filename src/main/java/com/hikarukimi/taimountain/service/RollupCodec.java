@@ -0,0 +1,69 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.entity.Rollup;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 汇总记录的存储格式，每条 112 字节：区间起始时间、样本数、降雨样本数和 12 个统计值。
+ *
+ * @author Hikarukimi
+ */
+final class RollupCodec implements HistoryCodec<Rollup> {
+
+    static final RollupCodec INSTANCE = new RollupCodec();
+
+    /**
+     * "TMHR"。
+     */
+    private static final int MAGIC = 0x544D4852;
+
+    private static final int RECORD_SIZE = 112;
+
+    private RollupCodec() {
+    }
+
+    @Override
+    public int magic() {
+        return MAGIC;
+    }
+
+    @Override
+    public int recordSize() {
+        return RECORD_SIZE;
+    }
+
+    @Override
+    public long time(Rollup rollup) {
+        return rollup.getTime();
+    }
+
+    @Override
+    public void write(ByteBuffer buffer, int offset, Rollup rollup) {
+        buffer.putLong(offset, rollup.getTime());
+        buffer.putInt(offset + 8, rollup.getCount());
+        buffer.putInt(offset + 12, rollup.getRainCount());
+        buffer.putDouble(offset + 16, rollup.getTempMin());
+        buffer.putDouble(offset + 24, rollup.getTempMax());
+        buffer.putDouble(offset + 32, rollup.getTempSum());
+        buffer.putDouble(offset + 40, rollup.getRhMin());
+        buffer.putDouble(offset + 48, rollup.getRhMax());
+        buffer.putDouble(offset + 56, rollup.getRhSum());
+        buffer.putDouble(offset + 64, rollup.getWindSpdMin());
+        buffer.putDouble(offset + 72, rollup.getWindSpdMax());
+        buffer.putDouble(offset + 80, rollup.getWindSpdSum());
+        buffer.putDouble(offset + 88, rollup.getRainMin());
+        buffer.putDouble(offset + 96, rollup.getRainMax());
+        buffer.putDouble(offset + 104, rollup.getRainSum());
+    }
+
+    @Override
+    public Rollup read(ByteBuffer buffer, int offset) {
+        return new Rollup(buffer.getLong(offset), buffer.getInt(offset + 8),
+                buffer.getDouble(offset + 16), buffer.getDouble(offset + 24), buffer.getDouble(offset + 32),
+                buffer.getDouble(offset + 40), buffer.getDouble(offset + 48), buffer.getDouble(offset + 56),
+                buffer.getDouble(offset + 64), buffer.getDouble(offset + 72), buffer.getDouble(offset + 80),
+                buffer.getInt(offset + 12),
+                buffer.getDouble(offset + 88), buffer.getDouble(offset + 96), buffer.getDouble(offset + 104));
+    }
+}
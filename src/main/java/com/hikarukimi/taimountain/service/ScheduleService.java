@@ -10,7 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * ScheduleService 负责定时任务的调度。
- * 定期通过 WebSocket 发送消息。
+ * 每秒检查一次各地点的刷新计划，刷新时机由 RefreshScheduler 决定，并定期为空闲的 WebSocket 连接发送 ping。
  *
  * @author Hikarukimi
  */
@@ -25,24 +25,36 @@ public class ScheduleService {
 
     private final WebSocket webSocket;
 
+    private final RefreshScheduler refreshScheduler;
+
     @Autowired
-    public ScheduleService(WebSocket webSocket) {
+    public ScheduleService(WebSocket webSocket, RefreshScheduler refreshScheduler) {
         this.webSocket = webSocket;
+        this.refreshScheduler = refreshScheduler;
+    }
+
+    /**
+     * 每秒检查一次，刷新已到期的地点并推送新数据。
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void refresh() {
+        try {
+            refreshScheduler.tick();
+        } catch (Exception e) {
+            // 如果在刷新时发生异常，记录错误日志
+            logger.error("Failed to refresh forecasts", e);
+        }
     }
 
     /**
-     * 每5秒执行一次 sendMessage 方法。
-     * 在方法内部，首先打印 WebSocket 实例信息（用于调试），
-     * 然后调用 WebSocket 的 sendMessage 方法发送消息。
+     * 每5秒为空闲超过 weather.push.keep-alive 的 WebSocket 连接发送 ping。
      */
-    @Scheduled(cron = "*/5 * * * * ?")
-    public void sendMessage() {
+    @Scheduled(fixedDelay = 5000)
+    public void keepAlive() {
         try {
-            // 尝试发送消息
-            webSocket.sendMessage();
+            webSocket.pingIdleSessions();
         } catch (Exception e) {
-            // 如果在发送消息时发生异常，记录错误日志
-            logger.error("Failed to send message via WebSocket", e);
+            logger.error("Failed to ping idle WebSocket sessions", e);
         }
     }
 
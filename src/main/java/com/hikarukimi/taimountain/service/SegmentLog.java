@@ -0,0 +1,171 @@
+package com.hikarukimi.taimountain.service;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 一个目录下按序号命名的段文件组成的只追加日志。
+ * <p>
+ * 段按时间顺序排列，只有最后一个段可以追加，写满后创建下一个段。时间不晚于最后一条记录的追加被忽略。
+ * 目录在第一次追加时才创建；写满的段在 boundedElastic 线程上刷到磁盘，追加的调用方不等待 fsync。
+ *
+ * @param <T> 记录类型
+ * @author Hikarukimi
+ */
+@Slf4j
+final class SegmentLog<T> {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path dir;
+
+    private final HistoryCodec<T> codec;
+
+    private final int segmentRecords;
+
+    private final CopyOnWriteArrayList<HistorySegment<T>> segments;
+
+    private long lastTime;
+
+    private int nextSequence;
+
+    private SegmentLog(Path dir, HistoryCodec<T> codec, int segmentRecords, List<HistorySegment<T>> segments, int nextSequence) {
+        this.dir = dir;
+        this.codec = codec;
+        this.segmentRecords = segmentRecords;
+        this.segments = new CopyOnWriteArrayList<>(segments);
+        this.nextSequence = nextSequence;
+        this.lastTime = segments.isEmpty() ? Long.MIN_VALUE : segments.get(segments.size() - 1).lastTime();
+    }
+
+    /**
+     * 打开目录下已有的段文件，目录不存在时返回空日志，不在磁盘上创建任何内容。空段和无法识别的文件被忽略。
+     *
+     * @param dir            目录
+     * @param codec          记录格式
+     * @param segmentRecords 新建段的记录条数
+     * @return 日志
+     */
+    static <T> SegmentLog<T> open(Path dir, HistoryCodec<T> codec, int segmentRecords) throws IOException {
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    try {
+                        files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), path);
+                    } catch (NumberFormatException e) {
+                        log.warn("[history] 忽略无法识别的文件：{}", path);
+                    }
+                }
+            }
+        }
+
+        List<HistorySegment<T>> segments = new ArrayList<>();
+        for (Path path : files.values()) {
+            try {
+                HistorySegment<T> segment = HistorySegment.open(path, codec);
+                if (segment.size() == 0) {
+                    // 创建后尚未写入就退出留下的空段，新段使用更大的序号，不会与之冲突
+                    segment.close();
+                } else {
+                    segments.add(segment);
+                }
+            } catch (IOException e) {
+                log.warn("[history] 忽略无法打开的段文件：{}，message={}", path, e.getMessage());
+            }
+        }
+        int capacity = Math.min(Math.max(segmentRecords, HistorySegment.INDEX_STRIDE), HistorySegment.maxCapacity(codec));
+        return new SegmentLog<>(dir, codec, capacity, segments, files.isEmpty() ? 1 : files.lastKey() + 1);
+    }
+
+    /**
+     * 追加一条记录。
+     *
+     * @param record 记录
+     * @return 时间不晚于最后一条记录时返回 false
+     */
+    synchronized boolean append(T record) throws IOException {
+        long time = codec.time(record);
+        if (time <= lastTime) {
+            return false;
+        }
+        HistorySegment<T> tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.isFull()) {
+            if (tail != null) {
+                // 写满的段不再修改，fsync 不阻塞追加线程
+                HistorySegment<T> full = tail;
+                Schedulers.boundedElastic().schedule(full::force);
+            } else {
+                Files.createDirectories(dir);
+            }
+            tail = HistorySegment.create(dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX)), codec, segmentRecords);
+            nextSequence++;
+            segments.add(tail);
+        }
+        tail.append(record);
+        lastTime = time;
+        return true;
+    }
+
+    /**
+     * 按时间顺序读取 [from, to] 范围内的记录，只访问与范围重叠的段。
+     */
+    void query(long from, long to, Consumer<? super T> consumer) {
+        for (HistorySegment<T> segment : segments) {
+            if (segment.firstTime() > to) {
+                return;
+            }
+            if (segment.lastTime() >= from) {
+                segment.scan(from, to, consumer);
+            }
+        }
+    }
+
+    /**
+     * 最后一条记录的时间，没有记录时返回 Long.MIN_VALUE。
+     */
+    synchronized long lastTime() {
+        return lastTime;
+    }
+
+    Map<String, Object> toMap() {
+        long records = 0;
+        long bytes = 0;
+        for (HistorySegment<T> segment : segments) {
+            records += segment.size();
+            bytes += segment.fileSize();
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("segments", segments.size());
+        map.put("records", records);
+        map.put("bytes", bytes);
+        map.put("firstTime", segments.isEmpty() ? null : segments.get(0).firstTime());
+        map.put("lastTime", segments.isEmpty() ? null : segments.get(segments.size() - 1).lastTime());
+        return map;
+    }
+
+    synchronized void close() {
+        for (HistorySegment<T> segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("[history] 关闭段文件失败：{}，message={}", segment.getPath(), e.getMessage());
+            }
+        }
+    }
+}
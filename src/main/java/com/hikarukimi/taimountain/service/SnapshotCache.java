@@ -0,0 +1,193 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 按地点缓存上游数据快照。
+ * <p>
+ * 读取当前快照不加锁；快照过期后，同一地点的并发未命中只会触发一次上游请求，
+ * 其余调用方等待并共享这一次请求的结果（single-flight）。
+ * <p>
+ * 快照过期后的 stale-while-revalidate 时长内，读取立即返回旧快照并在后台发起刷新，调用方不等待上游；
+ * 超过该时长才需要等待刷新结果。刷新失败时，年龄不超过 stale-if-error 的快照作为降级结果返回，
+ * 上游故障或熔断期间调用方仍能拿到最近一次成功获取的数据，由快照的 fetchedAt 判断其新旧。
+ *
+ * @param <T> 快照承载的数据类型
+ * @author Hikarukimi
+ */
+public class SnapshotCache<T> {
+
+    private final ConcurrentHashMap<UrlConstant, Snapshot<T>> snapshots = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<UrlConstant, CompletableFuture<Snapshot<T>>> inFlight = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+
+    private final long staleMillis;
+
+    private final long staleIfErrorMillis;
+
+    private final ToLongFunction<T> version;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder staleOnError = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    /**
+     * @param ttl                  快照的有效期
+     * @param staleWhileRevalidate 过期后仍可直接返回旧快照、并在后台刷新的时长
+     * @param staleIfError         刷新失败时可作为降级结果返回的快照最大年龄
+     * @param version              计算快照内容版本的函数，内容相同时应返回相同的值
+     */
+    public SnapshotCache(Duration ttl, Duration staleWhileRevalidate, Duration staleIfError, ToLongFunction<T> version) {
+        this.ttlMillis = ttl.toMillis();
+        this.staleMillis = ttlMillis + staleWhileRevalidate.toMillis();
+        this.staleIfErrorMillis = staleIfError.toMillis();
+        this.version = version;
+    }
+
+    /**
+     * 获取指定地点的快照，过期或不存在时通过 loader 从上游加载。
+     * <p>
+     * 过期不久的快照直接返回，同时在后台刷新；刷新失败时退回到 stale-if-error 内的旧快照。
+     * 刷新一旦开始便与调用方的订阅解耦，某个调用方取消订阅不会中断其他调用方正在等待的刷新。
+     *
+     * @param location 地点
+     * @param loader   上游加载函数，返回的 Mono 失败时表示加载失败
+     * @return 快照，可能已经过期，调用方可以根据 fetchedAt 标注其年龄
+     */
+    public Mono<Snapshot<T>> get(UrlConstant location, Function<UrlConstant, Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Snapshot<T> snapshot = snapshots.get(location);
+            long now = System.currentTimeMillis();
+            if (snapshot != null && snapshot.isFresh(ttlMillis, now)) {
+                hits.increment();
+                return Mono.just(snapshot);
+            }
+            if (snapshot != null && snapshot.isFresh(staleMillis, now)) {
+                // 后台刷新的结果只发布到缓存，失败时由下一次读取重试
+                stale.increment();
+                refresh(location, loader);
+                return Mono.just(snapshot);
+            }
+            misses.increment();
+            return Mono.fromFuture(refresh(location, loader), true)
+                    .onErrorResume(e -> fallback(location, e));
+        });
+    }
+
+    /**
+     * 获取指定地点的新鲜快照，过期时等待上游刷新，不返回旧快照。
+     * <p>
+     * 供定时刷新使用：刷新失败以错误结束，调用方据此退避，而不是把旧快照当作新的数据推送。
+     *
+     * @param location 地点
+     * @param loader   上游加载函数
+     * @return 新鲜的快照
+     */
+    public Mono<Snapshot<T>> revalidate(UrlConstant location, Function<UrlConstant, Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Snapshot<T> snapshot = snapshots.get(location);
+            if (snapshot != null && snapshot.isFresh(ttlMillis, System.currentTimeMillis())) {
+                return Mono.just(snapshot);
+            }
+            return Mono.fromFuture(refresh(location, loader), true);
+        });
+    }
+
+    /**
+     * 刷新失败时返回 stale-if-error 内的旧快照，没有可用快照时原样传递错误。
+     */
+    private Mono<Snapshot<T>> fallback(UrlConstant location, Throwable error) {
+        Snapshot<T> snapshot = snapshots.get(location);
+        if (snapshot != null && snapshot.isFresh(staleIfErrorMillis, System.currentTimeMillis())) {
+            staleOnError.increment();
+            return Mono.just(snapshot);
+        }
+        return Mono.error(error);
+    }
+
+    /**
+     * 发起或加入指定地点的刷新，同一地点同一时刻只有一次上游请求。
+     */
+    private CompletableFuture<Snapshot<T>> refresh(UrlConstant location, Function<UrlConstant, Mono<T>> loader) {
+        CompletableFuture<Snapshot<T>> promise = new CompletableFuture<>();
+        CompletableFuture<Snapshot<T>> existing = inFlight.putIfAbsent(location, promise);
+        if (existing != null) {
+            // 已有刷新在进行，等待其结果
+            return existing;
+        }
+
+        // 在抢到刷新权之前，其他调用方可能刚刚发布了新快照
+        Snapshot<T> snapshot = snapshots.get(location);
+        if (snapshot != null && snapshot.isFresh(ttlMillis, System.currentTimeMillis())) {
+            inFlight.remove(location, promise);
+            promise.complete(snapshot);
+            return promise;
+        }
+
+        refreshes.increment();
+        Mono.defer(() -> loader.apply(location))
+                .switchIfEmpty(Mono.error(() -> new IllegalStateException("Empty response body.")))
+                .subscribe(value -> {
+                    // 这里抛出的异常会被 Reactor 丢弃，必须自行结束 promise，否则该地点的刷新会一直被占用
+                    Snapshot<T> fresh;
+                    try {
+                        long v = version.applyAsLong(value);
+                        // 内容没有变化时沿用原来的对象，其上缓存的编码结果可以继续使用
+                        Snapshot<T> previous = snapshots.get(location);
+                        T kept = previous != null && previous.getVersion() == v ? previous.getValue() : value;
+                        fresh = new Snapshot<>(kept, System.currentTimeMillis(), v);
+                        snapshots.put(location, fresh);
+                    } catch (RuntimeException e) {
+                        inFlight.remove(location, promise);
+                        promise.completeExceptionally(e);
+                        return;
+                    }
+                    inFlight.remove(location, promise);
+                    promise.complete(fresh);
+                }, e -> {
+                    inFlight.remove(location, promise);
+                    promise.completeExceptionally(e);
+                });
+        return promise;
+    }
+
+    /**
+     * 读取当前快照，不触发上游请求。
+     *
+     * @param location 地点
+     * @return 当前快照，不存在时返回 null
+     */
+    public Snapshot<T> peek(UrlConstant location) {
+        return snapshots.get(location);
+    }
+
+    /**
+     * 返回命中、未命中、返回旧快照和上游刷新次数。
+     *
+     * @return 统计数据
+     */
+    public Map<String, Long> getStats() {
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses.sum());
+        stats.put("stale", stale.sum());
+        stats.put("staleOnError", staleOnError.sum());
+        stats.put("refreshes", refreshes.sum());
+        return stats;
+    }
+}
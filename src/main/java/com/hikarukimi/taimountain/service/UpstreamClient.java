@@ -0,0 +1,399 @@
+package com.hikarukimi.taimountain.service;
+
+import com.alibaba.fastjson2.JSONReader;
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.util.PayloadEnvelope;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 单个上游主机的共享 HTTP 客户端。
+ * <p>
+ * 每个上游主机只创建一个 WebClient 和一个连接池，连接在请求之间保持复用，
+ * 避免每次请求都重新进行 TCP 和 TLS 握手。
+ * <p>
+ * 每个请求记录以下指标，provider 标签为上游名称：
+ * <ul>
+ *     <li>weather.upstream.latency：从发出请求到收到完整响应体的时间，按 location 和 outcome（success / error）区分；</li>
+ *     <li>weather.upstream.parse：定位并解析 JSON 的时间；</li>
+ *     <li>weather.upstream.payload：响应体大小（字节）。</li>
+ * </ul>
+ * 请求经过该上游的 CircuitBreaker：连续失败后熔断，熔断期间请求直接以 CircuitBreaker.OpenException 失败。
+ * weather.upstream.circuit 为熔断器状态（0 关闭，1 半开，2 打开），weather.upstream.rejected 为被熔断拒绝的请求数。
+ * <p>
+ * 启用 hedge 时，首个请求超过 HedgePolicy 给出的延迟仍未返回，再发出一个相同的请求，取先返回的结果并取消另一个。
+ * weather.upstream.hedges 按 result（fired / won / throttled）记录对冲次数，weather.upstream.hedge.delay 为当前的对冲延迟。
+ *
+ * @author Hikarukimi
+ */
+public class UpstreamClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamClient.class);
+
+    private final String name;
+
+    private final String baseUrl;
+
+    private final int warmupConnections;
+
+    private final PayloadEnvelope envelope;
+
+    private final ConnectionProvider connectionProvider;
+
+    private final HttpClient httpClient;
+
+    private final WebClient webClient;
+
+    /**
+     * 连接池指标，按远端地址区分。
+     */
+    private final Map<SocketAddress, ConnectionPoolMetrics> poolMetrics = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 按地点缓存的请求耗时计时器，只为实际请求过的地点注册。
+     */
+    private final Map<UrlConstant, Timer> successTimers = new ConcurrentHashMap<>();
+
+    private final Map<UrlConstant, Timer> errorTimers = new ConcurrentHashMap<>();
+
+    private final Timer parseTimer;
+
+    private final DistributionSummary payloadSize;
+
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * 对冲策略，未启用时为 null。
+     */
+    private final HedgePolicy hedgePolicy;
+
+    public UpstreamClient(String name, WeatherProperties.Host host, PayloadEnvelope envelope,
+                          Consumer<HttpHeaders> defaultHeaders, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.envelope = envelope;
+        this.baseUrl = host.getBaseUrl();
+        this.warmupConnections = host.getWarmupConnections();
+
+        this.connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(host.getMaxConnections())
+                .pendingAcquireTimeout(host.getPendingAcquireTimeout())
+                .maxIdleTime(host.getMaxIdleTime())
+                .maxLifeTime(host.getMaxLifeTime())
+                .evictInBackground(host.getMaxIdleTime())
+                .metrics(true, () -> new ConnectionProvider.MeterRegistrar() {
+                    @Override
+                    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+                        poolMetrics.put(remoteAddress, metrics);
+                    }
+
+                    @Override
+                    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+                        poolMetrics.remove(remoteAddress);
+                    }
+                })
+                .build();
+
+        this.httpClient = HttpClient.create(connectionProvider)
+                .protocol(host.isHttp2()
+                        ? new HttpProtocol[]{HttpProtocol.H2, HttpProtocol.HTTP11}
+                        : new HttpProtocol[]{HttpProtocol.HTTP11})
+                .keepAlive(true)
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) host.getConnectTimeout().toMillis())
+                .responseTimeout(host.getResponseTimeout());
+
+        this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize((int) host.getMaxInMemorySize().toBytes()))
+                .defaultHeaders(defaultHeaders)
+                .build();
+
+        this.meterRegistry = meterRegistry;
+        this.parseTimer = Timer.builder("weather.upstream.parse")
+                .description("Time to locate and parse the JSON in an upstream response")
+                .tag("provider", name)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(1))
+                .register(meterRegistry);
+        this.payloadSize = DistributionSummary.builder("weather.upstream.payload")
+                .description("Upstream response body size")
+                .baseUnit("bytes")
+                .tag("provider", name)
+                .register(meterRegistry);
+
+        this.circuitBreaker = new CircuitBreaker(host.getFailureThreshold(), host.getOpenDuration().toMillis());
+        Gauge.builder("weather.upstream.circuit", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("Circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .tag("provider", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("weather.upstream.rejected", circuitBreaker, CircuitBreaker::getRejected)
+                .description("Upstream requests rejected by the open circuit breaker")
+                .tag("provider", name)
+                .register(meterRegistry);
+
+        this.hedgePolicy = host.getHedge().isEnabled() ? new HedgePolicy(host.getHedge()) : null;
+        if (hedgePolicy != null) {
+            hedgeCounter(meterRegistry, "fired", HedgePolicy::getHedged);
+            hedgeCounter(meterRegistry, "won", HedgePolicy::getWins);
+            hedgeCounter(meterRegistry, "throttled", HedgePolicy::getThrottled);
+            Gauge.builder("weather.upstream.hedge.delay", hedgePolicy, HedgePolicy::getDelayMillis)
+                    .description("Current delay before a hedged request is sent")
+                    .baseUnit("milliseconds")
+                    .tag("provider", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 请求指定 URL 常量对应的接口，并解析响应中的 JSON。
+     * <p>
+     * 路径和查询参数取自 UrlConstant，主机地址取自配置，便于将请求指向其他环境。
+     * 响应体以原始字节接收，由该上游的 PayloadEnvelope 定位 JSON 区间后直接交给解析函数，
+     * 解析在 parallel 调度器上进行，不占用网络 IO 线程。
+     *
+     * @param location URL 常量
+     * @param parser   JSON 解析函数
+     * @param <T>      解析结果类型
+     * @return 解析结果，响应体为空时为空 Mono
+     */
+    public <T> Mono<T> get(UrlConstant location, Function<JSONReader, T> parser) {
+        return fetch(location)
+                .publishOn(Schedulers.parallel())
+                .map(buffer -> {
+                    try {
+                        return decode(buffer, parser);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * 预热连接池：提前加载事件循环和 DNS 解析器，并建立配置数量的连接。
+     *
+     * @return 预热完成信号，预热失败不会抛出异常
+     */
+    public Mono<Void> warmup() {
+        if (warmupConnections <= 0) {
+            return Mono.empty();
+        }
+        return httpClient.warmup()
+                .thenMany(Flux.range(0, warmupConnections)
+                        .flatMap(i -> webClient.head()
+                                .uri(URI.create(baseUrl + "/"))
+                                .exchangeToMono(ClientResponse::releaseBody)))
+                .then()
+                .doOnSuccess(v -> logger.info("Upstream {} warmed up with {} connection(s).", name, warmupConnections))
+                .onErrorResume(e -> {
+                    logger.warn("Failed to warm up upstream {}: {}", name, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 返回连接池的当前状态。
+     *
+     * @return 各远端地址的连接数统计
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        poolMetrics.forEach((remoteAddress, metrics) -> {
+            Map<String, Integer> pool = new LinkedHashMap<>();
+            pool.put("acquired", metrics.acquiredSize());
+            pool.put("idle", metrics.idleSize());
+            pool.put("allocated", metrics.allocatedSize());
+            pool.put("maxAllocated", metrics.maxAllocatedSize());
+            pool.put("pendingAcquire", metrics.pendingAcquireSize());
+            stats.put(remoteAddress.toString(), pool);
+        });
+        return stats;
+    }
+
+    /**
+     * 返回熔断器的当前状态。
+     *
+     * @return 熔断器状态和统计
+     */
+    public Map<String, Object> getCircuitStats() {
+        return circuitBreaker.getStats();
+    }
+
+    /**
+     * 返回对冲请求的统计。
+     *
+     * @return 对冲延迟和次数，未启用时返回 null
+     */
+    public Map<String, Object> getHedgeStats() {
+        return hedgePolicy == null ? null : hedgePolicy.getStats();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 释放连接池。
+     */
+    public void dispose() {
+        connectionProvider.dispose();
+    }
+
+    /**
+     * 请求上游并接收完整的响应体，启用 hedge 时按 HedgePolicy 发出对冲请求。
+     * <p>
+     * 首个请求在对冲之前失败时不再对冲，直接返回该错误；两个请求都失败时返回首个请求的错误。
+     */
+    private Mono<DataBuffer> fetch(UrlConstant location) {
+        if (hedgePolicy == null) {
+            return attempt(location);
+        }
+        return Mono.defer(() -> {
+            long delay = hedgePolicy.onRequest();
+            if (delay < 0) {
+                return recordPrimary(attempt(location));
+            }
+            Sinks.One<Boolean> primaryFailed = Sinks.one();
+            AtomicReference<Throwable> primaryError = new AtomicReference<>();
+            Mono<DataBuffer> primary = recordPrimary(attempt(location))
+                    .doOnError(e -> {
+                        primaryError.set(e);
+                        primaryFailed.tryEmitValue(true);
+                    });
+            Mono<DataBuffer> hedge = Mono.delay(Duration.ofNanos(delay))
+                    .takeUntilOther(primaryFailed.asMono())
+                    .filter(tick -> hedgePolicy.tryHedge())
+                    .flatMap(tick -> attempt(location))
+                    .doOnNext(buffer -> hedgePolicy.onHedgeWin());
+            return Mono.firstWithValue(primary, hedge)
+                    .onErrorMap(NoSuchElementException.class,
+                            e -> primaryError.get() != null ? primaryError.get() : e);
+        });
+    }
+
+    /**
+     * 把首个请求的耗时交给 HedgePolicy，被对冲请求取消时按已经过的时间记录。
+     */
+    private Mono<DataBuffer> recordPrimary(Mono<DataBuffer> primary) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return primary
+                    .doOnSuccess(buffer -> hedgePolicy.record(System.nanoTime() - start))
+                    .doOnCancel(() -> hedgePolicy.record(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * 发出一次上游请求并接收完整的响应体，记录请求耗时和响应体大小，并向熔断器报告结果。
+     */
+    private Mono<DataBuffer> attempt(UrlConstant location) {
+        return Mono.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Mono.error(new CircuitBreaker.OpenException(name));
+            }
+            long start = System.nanoTime();
+            return webClient.get()
+                    .uri(resolve(location))
+                    .retrieve()
+                    .bodyToMono(DataBuffer.class)
+                    .doOnSuccess(buffer -> {
+                        circuitBreaker.onSuccess();
+                        successTimers.computeIfAbsent(location, key -> latencyTimer(key, "success"))
+                                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (buffer != null) {
+                            payloadSize.record(buffer.readableByteCount());
+                        }
+                    })
+                    .doOnError(e -> {
+                        circuitBreaker.onFailure();
+                        errorTimers.computeIfAbsent(location, key -> latencyTimer(key, "error"))
+                                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    })
+                    .doOnCancel(circuitBreaker::onCancel);
+        });
+    }
+
+    private <T> T decode(DataBuffer buffer, Function<JSONReader, T> parser) {
+        long start = System.nanoTime();
+        try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+            ByteBuffer body = iterator.hasNext() ? iterator.next() : ByteBuffer.allocate(0);
+            if (iterator.hasNext()) {
+                // 响应体由多个不连续的缓冲区组成时，合并为一个连续缓冲区
+                ByteBuffer joined = ByteBuffer.allocate(buffer.readableByteCount());
+                joined.put(body);
+                iterator.forEachRemaining(joined::put);
+                body = joined.flip();
+            }
+            try (JSONReader reader = JSONReader.of(envelope.unwrap(body), StandardCharsets.UTF_8)) {
+                return parser.apply(reader);
+            }
+        } finally {
+            parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void hedgeCounter(MeterRegistry registry, String result,
+                              ToDoubleFunction<HedgePolicy> count) {
+        FunctionCounter.builder("weather.upstream.hedges", hedgePolicy, count)
+                .description("Hedged upstream requests by outcome")
+                .tags("provider", name, "result", result)
+                .register(registry);
+    }
+
+    private Timer latencyTimer(UrlConstant location, String outcome) {
+        return Timer.builder("weather.upstream.latency")
+                .description("Time from sending an upstream request to receiving the whole response body")
+                .tags("provider", name, "location", location.name(), "outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(5))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry);
+    }
+
+    private URI resolve(UrlConstant location) {
+        URI uri = URI.create(location.getUrlString());
+        String pathAndQuery = uri.getRawQuery() == null
+                ? uri.getRawPath()
+                : uri.getRawPath() + "?" + uri.getRawQuery();
+        return URI.create(baseUrl + pathAndQuery);
+    }
+}
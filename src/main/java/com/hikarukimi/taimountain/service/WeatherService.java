@@ -1,21 +1,26 @@
 package com.hikarukimi.taimountain.service;
 
 import com.alibaba.fastjson2.JSON;
-import com.alibaba.fastjson2.JSONPath;
+import com.alibaba.fastjson2.JSONObject;
 import com.hikarukimi.taimountain.Response;
 import com.hikarukimi.taimountain.UrlConstant;
-import com.hikarukimi.taimountain.entity.CurrentWeather;
-import com.hikarukimi.taimountain.entity.WeatherForecast;
-import com.hikarukimi.taimountain.entity.WeatherWarning;
-import com.hikarukimi.taimountain.util.RegexUtil;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import com.hikarukimi.taimountain.util.Fingerprint;
+import com.hikarukimi.taimountain.util.MsnOverviewParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.RequestParam;
-import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Service
@@ -23,117 +28,175 @@ public class WeatherService {
 
     private static final Logger logger = LoggerFactory.getLogger(WeatherService.class);
 
-    private WebClient.Builder requestBuildWithHeader() {
-        return WebClient.builder()
-                .defaultHeaders(headers -> {
-                    headers.add("Host", "d1.weather.com.cn");
-                    headers.add("Referer", "https://www.weather.com.cn/");
-                });
+    /**
+     * 按地点缓存的天气预报快照，REST 接口与 WebSocket 推送共用。
+     */
+    private final SnapshotCache<ForecastData> forecastCache;
+
+    /**
+     * d1.weather.com.cn 实况快照，只有 BASIC_URL 一个地点。
+     */
+    private final SnapshotCache<JSONObject> basicCache;
+
+    /**
+     * api.msn.cn 共享客户端。
+     */
+    private final UpstreamClient msnClient;
+
+    /**
+     * d1.weather.com.cn 共享客户端。
+     */
+    private final UpstreamClient weatherComClient;
+
+    /**
+     * 实况观测的历史记录。
+     */
+    private final HistoryStore historyStore;
+
+    @Autowired
+    public WeatherService(WeatherProperties weatherProperties,
+                          @Qualifier("msnClient") UpstreamClient msnClient,
+                          @Qualifier("weatherComClient") UpstreamClient weatherComClient,
+                          HistoryStore historyStore) {
+        WeatherProperties.Cache cache = weatherProperties.getCache();
+        this.forecastCache = new SnapshotCache<>(cache.getTtl(), cache.getStaleWhileRevalidate(), cache.getStaleIfError(),
+                ForecastData::getFingerprint);
+        this.basicCache = new SnapshotCache<>(cache.getTtl(), cache.getStaleWhileRevalidate(), cache.getStaleIfError(),
+                WeatherService::fingerprint);
+        this.msnClient = msnClient;
+        this.weatherComClient = weatherComClient;
+        this.historyStore = historyStore;
     }
 
     /**
      * 获取当前天气信息。
      * <p>
-     * 发送 HTTP 请求从指定 URL 获取天气数据，并解析为 WeatherInfo 对象。
-     * 使用 Kotlinx Serialization 的 Json 解析器将响应体中的 JSON 字符串转换为 WeatherInfo 对象。
+     * 发送 HTTP 请求从指定 URL 获取天气数据，响应体形如 'var dataSK = {...};'，
+     * 由 PayloadEnvelope 在原始字节上定位 JSON 对象后直接解析。结果与天气预报一样按快照缓存。
      *
-     * @return Response 包含解析后的 WeatherInfo 数据。
+     * @return 包含解析后的 WeatherInfo 数据的 Response 快照，没有可用快照时以错误结束。
      */
-    public Response getWeather() {
-        // 构建 WebClient 实例并发送 GET 请求
-        WebClient webClient = requestBuildWithHeader()
-                .baseUrl(UrlConstant.BASIC_URL.getUrlString())
-                .build();
-
-        // 发送请求并处理响应
-        try {
-            String responseBody = webClient.get().retrieve().bodyToMono(String.class).block();
-            if (responseBody != null) {
-                // 使用正则表达式提取 JSON 字符串，并通过 Json 解析器将其转换为 WeatherInfo 对象
-                return Response.data(
-                        JSON.toJSONString(RegexUtil.extractJsonFromVarParameter(responseBody)));
-            } else {
-                return Response.error("Failed to retrieve weather data: Empty response body.");
-            }
-        } catch (Exception e) {
-            logger.error("Error fetching weather data.", e);
-            return Response.error("Failed to retrieve weather data: " + e.getMessage());
-        }
+    public Mono<Snapshot<Response>> getWeather() {
+        return basicCache.get(UrlConstant.BASIC_URL,
+                        location -> weatherComClient.get(location, reader -> reader.read(JSONObject.class)))
+                // 保持原有返回格式：data 为 JSON 文本经过一次字符串编码后的结果
+                .map(snapshot -> snapshot.map(weatherInfo -> Response.data(JSON.toJSONString(weatherInfo.toJSONString()))))
+                .doOnError(e -> logger.error("Error fetching weather data: {}", e.getMessage()));
     }
 
     /**
      * 获取天气预报信息。
      * <p>
-     * 发送 HTTP 请求从指定 URL 获取天气预报数据，并解析为 CurrentWeather 和 WeatherForecast 对象。
-     * 使用 JSONPath 提取响应体中的特定字段，并将其解析为相应的对象。
+     * 优先返回缓存中的快照，快照过期时才会向上游请求并解析为 CurrentWeather 和 WeatherForecast 对象。
+     * 上游不可用时可能返回过期的快照，调用方根据快照的获取时间标注数据年龄。
+     * data 为快照的 Frame，其 JSON 编码与 WebSocket 推送共用，由控制器直接写出，不再序列化。
+     *
+     * @param location 位置参数
+     * @return 包含当前天气和天气预报数据的 Response 快照，没有可用快照时以错误结束。
+     */
+    public Mono<Snapshot<Response>> getForecast(@RequestParam("location") String location) {
+        return getForecastSnapshot(location)
+                // 返回包含数据的 Response
+                .map(snapshot -> snapshot.map(forecastData -> Response.data(forecastData.getFrame())))
+                .doOnError(e -> logger.error("Error fetching forecast data: {}", e.getMessage()));
+    }
+
+    /**
+     * 同时获取多个地点的天气预报，各地点并发从缓存或上游获取，总耗时取决于最慢的地点而不是各地点耗时之和。
+     * <p>
+     * 单个地点失败不影响其他地点：失败的地点对应一个以当前时间为获取时间的错误 Response 快照。
+     *
+     * @param locations 位置参数，不应重复
+     * @return 按 locations 顺序排列的各地点 Response 快照
+     */
+    public Mono<Map<String, Snapshot<Response>>> getForecasts(Collection<String> locations) {
+        return Flux.fromIterable(locations)
+                .flatMapSequential(location -> getForecast(location)
+                        .onErrorResume(e -> Mono.just(new Snapshot<>(
+                                Response.error("Failed to retrieve forecast data: " + e.getMessage()),
+                                System.currentTimeMillis(), 0)))
+                        .map(snapshot -> Map.entry(location, snapshot)))
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new);
+    }
+
+    /**
+     * 获取指定地点的天气预报快照数据，location 无效时以 IllegalArgumentException 结束。
+     *
+     * @param location 位置参数
+     * @return 天气预报数据
+     */
+    public Mono<ForecastData> getForecastData(String location) {
+        return getForecastSnapshot(location).map(Snapshot::getValue);
+    }
+
+    /**
+     * 获取指定地点的天气预报快照，包含快照的获取时间，location 无效时以 IllegalArgumentException 结束。
      *
      * @param location 位置参数
-     * @return Response 包含当前天气和天气预报数据。
+     * @return 天气预报快照
+     */
+    public Mono<Snapshot<ForecastData>> getForecastSnapshot(String location) {
+        return Mono.defer(() -> forecastCache.get(UrlConstant.forecastOf(location), this::loadForecast));
+    }
+
+    /**
+     * 获取指定地点的新鲜天气预报快照，快照过期时等待上游刷新，刷新失败时以错误结束而不返回旧快照。
+     *
+     * @param location 地点
+     * @return 新鲜的天气预报快照
+     */
+    public Mono<Snapshot<ForecastData>> revalidateForecast(UrlConstant location) {
+        return forecastCache.revalidate(location, this::loadForecast);
+    }
+
+    /**
+     * 返回预报快照缓存的命中、未命中和上游刷新次数，basic 为实况快照缓存的统计。
+     *
+     * @return Response 包含缓存统计数据。
+     */
+    public Response getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(forecastCache.getStats());
+        stats.put("basic", basicCache.getStats());
+        return Response.data(stats);
+    }
+
+    /**
+     * 返回各上游连接池、熔断器和对冲请求的当前状态。
+     *
+     * @return Response 包含连接池、熔断器和对冲请求统计数据。
      */
-    public Response getForecast(@RequestParam("location") String location) {
-        // 构建 WebClient 实例并发送 GET 请求
-        WebClient webClient = WebClient.builder()
-                .defaultHeaders(headers -> {
-                    headers.add("Referer", "https://www.msn.cn/zh-cn/weather/forecast/in-%E5%B1%B1%E4%B8%9C%E7%9C%81,%E6%B3%B0%E5%AE%89%E5%B8%82?ocid=ansmsnweather&loc=eyJsIjoi5rOw5bGx5Yy6IiwiciI6IuWxseS4nOecgSIsInIyIjoi5rOw5a6J5biCIiwiYyI6IuS4reWNjuS6uuawkeWFseWSjOWbvSIsImkiOiJjbiIsInQiOjEwMiwiZyI6InpoLWNuIiwieCI6IjExNy4xMzUy");
-                })
-                .baseUrl(UrlConstant.fromName(location))
-                .build();
-
-        // 发送请求并处理响应
-        try {
-            String responseBody = webClient.get().retrieve().bodyToMono(String.class).block();
-            if (responseBody == null) {
-                return Response.error("Failed to retrieve forecast data: Empty response body.");
-            }
-
-
-            // 创建 HashMap 用于存储最终结果
-            Map<String, Object> resultHashMap = new HashMap<>();
-
-            // 使用 JSONPath 提取天气数据
-            Object weather = JSONPath.eval(responseBody, "$.responses[0].weather");
-
-            // 提取当前天气数据并解析为 CurrentWeather 对象
-            String currentString = JSON.toJSONString(JSONPath.eval(weather, "$[0].current"));
-            Object comment = JSONPath.eval(weather, "$[0].alerts.safetyGuide[0]");
-            ArrayList<WeatherWarning> thunder = (ArrayList<WeatherWarning>) JSONPath.eval(weather, "$[0].alerts");
-
-            CurrentWeather currentWeather = JSON.parseObject(currentString,CurrentWeather.class);
-
-            // 提取天气预报数据并解析为 WeatherForecast 对象列表
-            ArrayList<ArrayList<?>> forecastString = (ArrayList<ArrayList<?>>) JSONPath.eval(weather, "$[0].forecast.days..hourly[*]");
-            ArrayList<String> forecastSunSet = (ArrayList<String>) JSONPath.eval(weather, "$[0].forecast.days[*].almanac.sunset");
-            ArrayList<String> forecastSunRise = (ArrayList<String>) JSONPath.eval(weather, "$[0].forecast.days[*].almanac.sunrise");
-            ArrayList<WeatherForecast> forecastList = new ArrayList<>();
-
-            double rainAmount = 0.0;
-            // 遍历天气预报数据，逐个解析并添加到列表中
-            for (int i = 0; i < forecastString.size(); i++) {
-                for (int j = 0; j < forecastString.get(i).size(); j++) {
-                    String forecast = JSON.toJSONString(forecastString.get(i).get(j));
-                    WeatherForecast weatherForecast = JSON.parseObject(forecast,WeatherForecast.class);
-                    weatherForecast.setSunset(forecastSunSet.get(i));
-                    weatherForecast.setSunrise(forecastSunRise.get(i));
-                    weatherForecast.buildOwn();
-                    rainAmount += weatherForecast.getRainAmount();
-                    forecastList.add(weatherForecast);
-                }
-            }
-
-            // 将当前天气和天气预报数据放入 HashMap
-            resultHashMap.put("current", currentWeather);
-            currentWeather.setRainAmount(rainAmount);
-            currentWeather.buildOwn();
-            currentWeather.setComment(comment != null ? comment.toString() : null);
-            currentWeather.buildComment(thunder);
-            resultHashMap.put("forecast", forecastList);
-
-            // 返回包含数据的 Response
-            return Response.data(resultHashMap);
-        } catch (Exception e) {
-            logger.error("Error fetching forecast data.", e);
-            return Response.error("Failed to retrieve forecast data: " + e.getMessage());
+    public Response getUpstreamStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (UpstreamClient client : new UpstreamClient[]{msnClient, weatherComClient}) {
+            Map<String, Object> upstream = new LinkedHashMap<>();
+            upstream.put("pool", client.getPoolStats());
+            upstream.put("circuit", client.getCircuitStats());
+            upstream.put("hedge", client.getHedgeStats());
+            stats.put(client.getName(), upstream);
         }
+        return Response.data(stats);
+    }
+
+    /**
+     * 从上游获取指定地点的天气预报并解析。
+     * <p>
+     * 使用 MsnOverviewParser 对响应体做单次流式解析，直接构造相应的对象，并将实况观测追加到历史记录。
+     *
+     * @param location 地点
+     * @return 解析后的天气预报数据
+     */
+    private Mono<ForecastData> loadForecast(UrlConstant location) {
+        return msnClient.get(location, MsnOverviewParser::parse)
+                .doOnNext(forecastData -> historyStore.append(location, forecastData.getCurrent()));
+    }
+
+    /**
+     * 实况 JSON 的内容版本，按字段名和字段值计算。
+     */
+    private static long fingerprint(JSONObject weatherInfo) {
+        Fingerprint fingerprint = new Fingerprint().add(weatherInfo.size());
+        weatherInfo.forEach((key, value) -> fingerprint.add(key).add(value));
+        return fingerprint.value();
     }
 
     public Response getGateTime() {
@@ -143,23 +206,9 @@ public class WeatherService {
         return Response.data(map);
     }
 
-    public Response getWeatherByLocation(String location) {
-        // 构建 WebClient 实例并发送 GET 请求
-        WebClient webClient = WebClient.builder()
-                .defaultHeaders(headers -> {
-                    headers.add("Referer", "https://www.msn.cn/zh-cn/weather/forecast/in-%E5%B1%B1%E4%B8%9C%E7%9C%81,%E6%B3%B0%E5%AE%89%E5%B8%82?ocid=ansmsnweather&loc=eyJsIjoi5rOw5bGx5Yy6IiwiciI6IuWxseS4nOecgSIsInIyIjoi5rOw5a6J5biCIiwiYyI6IuS4reWNjuS6uuawkeWFseWSjOWbvSIsImkiOiJjbiIsInQiOjEwMiwiZyI6InpoLWNuIiwieCI6IjExNy4xMzUy");
-                })
-                .baseUrl(UrlConstant.fromName(location))
-                .build();
-
-        String responseBody = webClient.get().retrieve().bodyToMono(String.class).block();
-        if (responseBody == null) {
-            return Response.error("Failed to retrieve forecast data: Empty response body.");
-        }
-
-        // 使用 JSONPath 提取天气数据
-        Object weather = JSONPath.eval(responseBody, "$.responses[0].weather");
-        Object result = JSONPath.eval(weather, "$[0].current.cap");
-        return Response.data(result);
+    public Mono<Snapshot<Response>> getWeatherByLocation(String location) {
+        // 与 getForecast 共用同一份快照，避免重复请求上游
+        return getForecastSnapshot(location)
+                .map(snapshot -> snapshot.map(forecastData -> Response.data(forecastData.getCurrent().getCap())));
     }
 } 
\ No newline at end of file
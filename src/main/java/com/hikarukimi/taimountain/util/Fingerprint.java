@@ -0,0 +1,68 @@
+package com.hikarukimi.taimountain.util;
+
+/**
+ * 64 位内容指纹。
+ * <p>
+ * 依次加入各字段的值，得到一个与字段顺序相关的哈希值，用于廉价地判断两份快照的内容是否相同。
+ * double 按位参与计算，-0.0 与 0.0 视为相同，所有 NaN 视为相同。
+ *
+ * @author Hikarukimi
+ */
+public final class Fingerprint {
+
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private static final long NULL = 0x5BD1E9955BD1E995L;
+
+    private long hash = 0xCBF29CE484222325L;
+
+    public Fingerprint add(long value) {
+        hash = Long.rotateLeft(hash ^ mix(value), 29) * MULTIPLIER;
+        return this;
+    }
+
+    public Fingerprint add(double value) {
+        // 统一 -0.0 和 NaN 的表示
+        return add(value == 0.0 ? 0L : Double.doubleToLongBits(value));
+    }
+
+    public Fingerprint add(boolean value) {
+        return add(value ? 1L : 2L);
+    }
+
+    /**
+     * 加入字符串的长度和全部字符，每 4 个字符拼成一个 long 参与计算，不依赖 32 位的 String.hashCode。
+     */
+    public Fingerprint add(String value) {
+        if (value == null) {
+            return add(NULL);
+        }
+        int length = value.length();
+        add((long) length);
+        for (int i = 0; i < length; i += 4) {
+            long chunk = 0;
+            for (int j = i, end = Math.min(i + 4, length); j < end; j++) {
+                chunk = chunk << 16 | value.charAt(j);
+            }
+            add(chunk);
+        }
+        return this;
+    }
+
+    public Fingerprint add(Object value) {
+        return add(value == null ? null : value.toString());
+    }
+
+    public long value() {
+        return mix(hash);
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB93FE1A85EC9L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,272 @@
+package com.hikarukimi.taimountain.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 批量危险天气判定。
+ * <p>
+ * 对整段逐小时数据一次性计算雾凇、雨凇、云海、暴雪、结冰和风力等级。判定阈值和单值判定方法
+ * 只在本类中定义一次，Utils 与 Vector API 实现都引用这里的常量。每 64 个小时为一组，
+ * 判定结果先在局部变量中按位累积再整体写入位图，循环体中没有分支。
+ * <p>
+ * 默认使用标量实现。Vector API 实现位于 src/main/vector，只在使用 -Pvector 构建时编译；
+ * 启动参数同时包含 '--add-modules jdk.incubator.vector' 和 '-Dweather.hazard.vector=true'
+ * 时改用该实现，模块或实现类不可用时回退到标量实现。
+ *
+ * @author Hikarukimi
+ */
+public class HazardEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(HazardEngine.class);
+
+    /**
+     * 启用 Vector API 实现的系统属性。
+     */
+    public static final String VECTOR_PROPERTY = "weather.hazard.vector";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private static final String VECTOR_CLASS = HazardEngine.class.getPackageName() + ".VectorHazardEngine";
+
+    /**
+     * 冰点（单位：°C）。
+     */
+    static final double FREEZING_POINT = 0.0;
+
+    /**
+     * 露点与气温之差不超过该值时视为露点接近气温（单位：°C）。
+     */
+    static final double DEW_POINT_SPREAD = 2.0;
+
+    /**
+     * 雾凇、雨凇要求的最低相对湿度（单位：%，含）。
+     */
+    static final double ICING_MIN_HUMIDITY = 70.0;
+
+    /**
+     * 雾凇、雨凇要求的最低云量（单位：%，含）。
+     */
+    static final double OVERCAST_CLOUD_COVER = 90.0;
+
+    /**
+     * 雾凇的最低气温（单位：°C，含）。
+     */
+    static final double RIME_MIN_TEMP = -10.0;
+
+    /**
+     * 雾凇的风速范围（单位：m/s，含两端）。
+     */
+    static final double RIME_MIN_WIND = 1.0;
+    static final double RIME_MAX_WIND = 3.0;
+
+    /**
+     * 云量超过该值时可能形成云海（单位：%）。
+     */
+    static final double SEA_OF_CLOUDS_MIN_COVER = 70.0;
+
+    /**
+     * 暴雪的降水量下限（单位：mm）和最低相对湿度（单位：%，含）。
+     */
+    static final double BLIZZARD_MIN_RAIN = 10.0;
+    static final double BLIZZARD_MIN_HUMIDITY = 80.0;
+
+    /**
+     * 结冰要求相对湿度超过该值（单位：%）。
+     */
+    static final double FREEZING_MIN_HUMIDITY = 70.0;
+
+    /**
+     * 风力预警、大风、强风的风速下限（单位：m/s，含），暴雪同样要求达到强风。
+     */
+    static final double WIND_WARNING_SPEED = 11.0;
+    static final double GALE_SPEED = 14.0;
+    static final double STRONG_GALE_SPEED = 17.0;
+
+    private static final HazardEngine SCALAR = new HazardEngine();
+
+    private static final HazardEngine DEFAULT = selectDefault();
+
+    HazardEngine() {
+    }
+
+    /**
+     * 返回按启动参数选择的实现。
+     */
+    public static HazardEngine getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 返回标量实现。
+     */
+    public static HazardEngine scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * 返回 Vector API 实现。
+     *
+     * @throws IllegalStateException 当 jdk.incubator.vector 模块未加载或构建时未包含该实现时抛出
+     */
+    public static HazardEngine vector() {
+        if (!isVectorModuleLoaded()) {
+            throw new IllegalStateException("Module " + VECTOR_MODULE + " is not available, start the JVM with --add-modules " + VECTOR_MODULE);
+        }
+        if (!isVectorCompiled()) {
+            throw new IllegalStateException("The vector hazard engine is not on the classpath, build with -Pvector.");
+        }
+        try {
+            // 通过反射加载，避免在模块缺失时解析到 jdk.incubator.vector 中的类
+            return (HazardEngine) Class.forName(VECTOR_CLASS)
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load the vector hazard engine.", e);
+        }
+    }
+
+    /**
+     * 判断 Vector API 实现是否可用：jdk.incubator.vector 模块已加载，且构建时包含了该实现。
+     */
+    public static boolean isVectorAvailable() {
+        return isVectorModuleLoaded() && isVectorCompiled();
+    }
+
+    private static boolean isVectorModuleLoaded() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent();
+    }
+
+    private static boolean isVectorCompiled() {
+        // 只查找类文件，不加载类
+        return HazardEngine.class.getResource(VECTOR_CLASS.substring(VECTOR_CLASS.lastIndexOf('.') + 1) + ".class") != null;
+    }
+
+    private static HazardEngine selectDefault() {
+        if (!Boolean.getBoolean(VECTOR_PROPERTY)) {
+            return SCALAR;
+        }
+        if (!isVectorModuleLoaded()) {
+            logger.warn("{} is set but module {} is not available, falling back to the scalar hazard engine.",
+                    VECTOR_PROPERTY, VECTOR_MODULE);
+            return SCALAR;
+        }
+        if (!isVectorCompiled()) {
+            logger.warn("{} is set but the application was built without -Pvector, falling back to the scalar hazard engine.",
+                    VECTOR_PROPERTY);
+            return SCALAR;
+        }
+        HazardEngine engine = vector();
+        logger.info("Using the vector hazard engine.");
+        return engine;
+    }
+
+    /**
+     * 计算前 length 个小时的危险天气标记。
+     *
+     * @param temp       气温（单位：°C）
+     * @param rh         相对湿度（单位：%）
+     * @param dewPt      露点温度（单位：°C）
+     * @param windSpd    风速（单位：m/s）
+     * @param cloudCover 云量（单位：%）
+     * @param rainAmount 降雨量（单位：mm）
+     * @param length     小时数
+     * @param out        判定结果，容量不小于 length
+     */
+    public final void evaluate(double[] temp, double[] rh, double[] dewPt, double[] windSpd,
+                               double[] cloudCover, double[] rainAmount, int length, HazardMasks out) {
+        if (temp.length < length || rh.length < length || dewPt.length < length || windSpd.length < length
+                || cloudCover.length < length || rainAmount.length < length || out.size() < length) {
+            throw new IllegalArgumentException("Arrays are shorter than length " + length);
+        }
+        for (int base = 0, word = 0; base < length; base += 64, word++) {
+            evaluateWord(temp, rh, dewPt, windSpd, cloudCover, rainAmount, base, Math.min(64, length - base), word, out);
+        }
+    }
+
+    /**
+     * 计算从 base 开始的 count 个小时，结果写入第 word 个位图字。
+     */
+    void evaluateWord(double[] temp, double[] rh, double[] dewPt, double[] windSpd, double[] cloudCover,
+                      double[] rainAmount, int base, int count, int word, HazardMasks out) {
+        long rime = 0;
+        long freezingRain = 0;
+        long seaOfClouds = 0;
+        long blizzard = 0;
+        long freezing = 0;
+        for (int lane = 0; lane < count; lane++) {
+            int i = base + lane;
+            double t = temp[i];
+            double h = rh[i];
+            double d = dewPt[i];
+            double w = windSpd[i];
+            double c = cloudCover[i];
+            double r = rainAmount[i];
+
+            rime |= bit(isRime(t, h, d, w, c)) << lane;
+            freezingRain |= bit(isFreezingRain(t, r, h, d, c)) << lane;
+            seaOfClouds |= bit(isSeaOfClouds(c)) << lane;
+            blizzard |= bit(isBlizzard(r, w, h, t)) << lane;
+            freezing |= bit(isFreezing(t, d, h)) << lane;
+            out.windLevel[i] = windLevel(w);
+        }
+        out.rime[word] = rime;
+        out.freezingRain[word] = freezingRain;
+        out.seaOfClouds[word] = seaOfClouds;
+        out.blizzard[word] = blizzard;
+        out.freezing[word] = freezing;
+    }
+
+    /*
+     * 以下单值判定使用 & 而不是 &&，批量判定内联后不产生分支。
+     */
+
+    /**
+     * 露点接近气温，雾凇和雨凇的共同条件。
+     */
+    static boolean isDewNearTemp(double temp, double dewPoint) {
+        return dewPoint >= temp - DEW_POINT_SPREAD & dewPoint <= temp + DEW_POINT_SPREAD;
+    }
+
+    static boolean isRime(double temp, double humidity, double dewPoint, double windSpeed, double cloudCover) {
+        return temp >= RIME_MIN_TEMP & temp <= FREEZING_POINT
+                & humidity >= ICING_MIN_HUMIDITY
+                & isDewNearTemp(temp, dewPoint)
+                & windSpeed >= RIME_MIN_WIND & windSpeed <= RIME_MAX_WIND
+                & cloudCover >= OVERCAST_CLOUD_COVER;
+    }
+
+    static boolean isFreezingRain(double temp, double precipitation, double humidity, double dewPoint, double cloudCover) {
+        return temp < FREEZING_POINT
+                & precipitation > 0
+                & humidity >= ICING_MIN_HUMIDITY
+                & isDewNearTemp(temp, dewPoint)
+                & cloudCover >= OVERCAST_CLOUD_COVER;
+    }
+
+    static boolean isSeaOfClouds(double cloudCover) {
+        return cloudCover > SEA_OF_CLOUDS_MIN_COVER;
+    }
+
+    static boolean isBlizzard(double precipitation, double windSpeed, double humidity, double temp) {
+        return precipitation > BLIZZARD_MIN_RAIN
+                & windSpeed >= STRONG_GALE_SPEED
+                & humidity >= BLIZZARD_MIN_HUMIDITY
+                & temp < FREEZING_POINT;
+    }
+
+    static boolean isFreezing(double temp, double dewPoint, double humidity) {
+        return temp <= FREEZING_POINT & dewPoint <= FREEZING_POINT & humidity > FREEZING_MIN_HUMIDITY;
+    }
+
+    /**
+     * 风力等级序号：NoWarning、WindWarning、Gale、StrongGale 分别对应 0 到 3。
+     */
+    static byte windLevel(double windSpeed) {
+        return (byte) (bit(windSpeed >= WIND_WARNING_SPEED) + bit(windSpeed >= GALE_SPEED) + bit(windSpeed >= STRONG_GALE_SPEED));
+    }
+
+    static long bit(boolean value) {
+        return value ? 1L : 0L;
+    }
+}
@@ -0,0 +1,70 @@
+package com.hikarukimi.taimountain.util;
+
+import com.hikarukimi.taimountain.entity.WindLevel;
+
+/**
+ * 一段逐小时数据的危险天气判定结果。
+ * <p>
+ * 每种危险天气保存为一个位图，第 i 位对应第 i 个小时；风力等级保存为 WindLevel 的序号。
+ *
+ * @author Hikarukimi
+ */
+public final class HazardMasks {
+
+    private static final WindLevel[] WIND_LEVELS = WindLevel.values();
+
+    private final int size;
+
+    final long[] rime;
+    final long[] freezingRain;
+    final long[] seaOfClouds;
+    final long[] blizzard;
+    final long[] freezing;
+    final byte[] windLevel;
+
+    public HazardMasks(int size) {
+        int words = (size + 63) >>> 6;
+        this.size = size;
+        this.rime = new long[words];
+        this.freezingRain = new long[words];
+        this.seaOfClouds = new long[words];
+        this.blizzard = new long[words];
+        this.freezing = new long[words];
+        this.windLevel = new byte[size];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isRime(int index) {
+        return bit(rime, index);
+    }
+
+    public boolean isFreezingRain(int index) {
+        return bit(freezingRain, index);
+    }
+
+    public boolean isSeaOfClouds(int index) {
+        return bit(seaOfClouds, index);
+    }
+
+    public boolean isBlizzard(int index) {
+        return bit(blizzard, index);
+    }
+
+    public boolean isFreezing(int index) {
+        return bit(freezing, index);
+    }
+
+    public WindLevel getWindLevel(int index) {
+        return WIND_LEVELS[windLevel[index]];
+    }
+
+    private boolean bit(long[] mask, int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (mask[index >>> 6] & (1L << index)) != 0;
+    }
+}
@@ -0,0 +1,218 @@
+package com.hikarukimi.taimountain.util;
+
+import com.alibaba.fastjson2.JSONReader;
+import com.hikarukimi.taimountain.entity.CurrentWeather;
+import com.hikarukimi.taimountain.entity.ForecastColumns;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.entity.WeatherForecast;
+import com.hikarukimi.taimountain.entity.WeatherWarning;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MsnOverviewParser 以流式方式解析 MSN weather overview 响应。
+ * <p>
+ * 只对 responses[0].weather[0] 顺序扫描一遍，直接构造 CurrentWeather、预警列表和逐小时
+ * WeatherForecast，不构建中间 JSON 树，也不对每个小时做一次序列化再反序列化。
+ * 逐小时预报随后转为 ForecastColumns 列式存储。
+ * 读取完 weather[0] 后立即返回，响应体剩余部分不再解析。
+ * <p>
+ * 转为列式存储并计算危险天气标记的耗时记录为 weather.forecast.hazards 指标，解析的总耗时由调用方记录。
+ *
+ * @author Hikarukimi
+ */
+public final class MsnOverviewParser {
+
+    private static final Timer HAZARDS = Timer.builder("weather.forecast.hazards")
+            .description("Time to build the forecast columns and evaluate hazard flags")
+            .publishPercentileHistogram()
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(1))
+            .register(Metrics.globalRegistry);
+
+    // 私有构造函数防止实例化
+    private MsnOverviewParser() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * 解析字符串形式的响应体。
+     *
+     * @param body 响应体
+     * @return 解析后的天气预报数据
+     * @throws IllegalArgumentException 当响应中缺少 responses[0].weather[0].current 时抛出
+     */
+    public static ForecastData parse(String body) {
+        try (JSONReader reader = JSONReader.of(body)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * 从 JSONReader 的当前位置解析响应。
+     *
+     * @param reader 位于响应根对象之前的 JSONReader
+     * @return 解析后的天气预报数据
+     * @throws IllegalArgumentException 当响应中缺少 responses[0].weather[0].current 时抛出
+     */
+    public static ForecastData parse(JSONReader reader) {
+        // $.responses[0]
+        if (!enterField(reader, "responses") || !enterFirstElement(reader)) {
+            throw new IllegalArgumentException("响应中缺少 responses[0]");
+        }
+        // $.responses[0].weather[0]
+        if (!enterField(reader, "weather") || !enterFirstElement(reader) || !reader.nextIfObjectStart()) {
+            throw new IllegalArgumentException("响应中缺少 responses[0].weather[0]");
+        }
+
+        CurrentWeather current = null;
+        List<WeatherWarning> alerts = new ArrayList<>();
+        List<WeatherForecast> forecastList = new ArrayList<>(240);
+
+        while (!reader.nextIfObjectEnd()) {
+            String fieldName = reader.readFieldName();
+            if (reader.nextIfNull()) {
+                continue;
+            }
+            switch (fieldName) {
+                case "current" -> current = reader.read(CurrentWeather.class);
+                case "alerts" -> readAlerts(reader, alerts);
+                case "forecast" -> readForecast(reader, forecastList);
+                default -> reader.skipValue();
+            }
+        }
+
+        if (current == null) {
+            throw new IllegalArgumentException("响应中缺少 responses[0].weather[0].current");
+        }
+
+        // 逐小时预报转为列式存储，危险天气标记在转换时统一计算
+        long start = System.nanoTime();
+        ForecastColumns forecast = ForecastColumns.from(forecastList);
+
+        current.setRainAmount(forecast.totalRainAmount());
+        current.buildOwn();
+        current.setComment(firstSafetyGuide(alerts));
+        current.buildComment(alerts);
+        HAZARDS.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        return new ForecastData(current, forecast, alerts);
+    }
+
+    /**
+     * 读取 alerts 数组。
+     */
+    private static void readAlerts(JSONReader reader, List<WeatherWarning> alerts) {
+        if (!reader.nextIfArrayStart()) {
+            reader.skipValue();
+            return;
+        }
+        while (!reader.nextIfArrayEnd()) {
+            WeatherWarning warning = reader.read(WeatherWarning.class);
+            if (warning != null) {
+                alerts.add(warning);
+            }
+        }
+    }
+
+    /**
+     * 读取 forecast.days 数组，每一天的 sunrise/sunset 写入当天的所有逐小时预报。
+     */
+    private static void readForecast(JSONReader reader, List<WeatherForecast> forecastList) {
+        if (!enterField(reader, "days")) {
+            return;
+        }
+        if (reader.nextIfArrayStart()) {
+            while (!reader.nextIfArrayEnd()) {
+                if (!reader.nextIfObjectStart()) {
+                    reader.skipValue();
+                    continue;
+                }
+                int dayStart = forecastList.size();
+                String sunrise = null;
+                String sunset = null;
+                while (!reader.nextIfObjectEnd()) {
+                    String fieldName = reader.readFieldName();
+                    if (reader.nextIfNull()) {
+                        continue;
+                    }
+                    if ("hourly".equals(fieldName) && reader.nextIfArrayStart()) {
+                        while (!reader.nextIfArrayEnd()) {
+                            WeatherForecast weatherForecast = reader.read(WeatherForecast.class);
+                            if (weatherForecast != null) {
+                                forecastList.add(weatherForecast);
+                            }
+                        }
+                    } else if ("almanac".equals(fieldName) && reader.nextIfObjectStart()) {
+                        while (!reader.nextIfObjectEnd()) {
+                            String almanacField = reader.readFieldName();
+                            if ("sunrise".equals(almanacField)) {
+                                sunrise = reader.readString();
+                            } else if ("sunset".equals(almanacField)) {
+                                sunset = reader.readString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                for (int i = dayStart; i < forecastList.size(); i++) {
+                    forecastList.get(i).setSunrise(sunrise);
+                    forecastList.get(i).setSunset(sunset);
+                }
+            }
+        } else {
+            reader.skipValue();
+        }
+        // 跳过 forecast 对象中 days 之后的字段
+        while (!reader.nextIfObjectEnd()) {
+            reader.readFieldName();
+            reader.skipValue();
+        }
+    }
+
+    /**
+     * 在当前对象中向前查找指定字段，找到时停在字段值之前。
+     *
+     * @return 找到字段时返回 true；未找到时当前对象已被完整读取，返回 false
+     */
+    private static boolean enterField(JSONReader reader, String name) {
+        if (!reader.nextIfObjectStart()) {
+            reader.skipValue();
+            return false;
+        }
+        while (!reader.nextIfObjectEnd()) {
+            String fieldName = reader.readFieldName();
+            if (name.equals(fieldName)) {
+                return true;
+            }
+            reader.skipValue();
+        }
+        return false;
+    }
+
+    /**
+     * 进入数组的第一个元素，停在该元素的值之前。
+     *
+     * @return 数组非空时返回 true
+     */
+    private static boolean enterFirstElement(JSONReader reader) {
+        return reader.nextIfArrayStart() && !reader.nextIfArrayEnd();
+    }
+
+    private static String firstSafetyGuide(List<WeatherWarning> alerts) {
+        for (WeatherWarning alert : alerts) {
+            if (alert.getSafetyGuide() != null) {
+                return alert.getSafetyGuide();
+            }
+        }
+        return null;
+    }
+}
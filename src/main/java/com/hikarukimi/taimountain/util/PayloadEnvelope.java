@@ -0,0 +1,152 @@
+package com.hikarukimi.taimountain.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 上游响应的外层包装格式。
+ * <p>
+ * 部分上游并不直接返回 JSON，而是将 JSON 对象嵌在 JavaScript 变量赋值或 HTML 标签中。
+ * 实现类直接在原始响应字节上扫描一次，定位 JSON 对象的起止位置并返回指向该区间的视图，
+ * 不解码为字符串，也不编译正则表达式，返回的视图可以直接交给 JSON 解析器。
+ *
+ * @author Hikarukimi
+ */
+@FunctionalInterface
+public interface PayloadEnvelope {
+
+    /**
+     * 响应体本身就是 JSON。
+     */
+    PayloadEnvelope JSON = body -> body;
+
+    /**
+     * 形如 'var variableName = {...};' 的 JavaScript 变量赋值。
+     */
+    PayloadEnvelope VAR_ASSIGNMENT = PayloadEnvelope::unwrapVarAssignment;
+
+    /**
+     * 定位响应体中的 JSON 部分。
+     *
+     * @param body 响应体，position 到 limit 之间为有效数据
+     * @return 与 body 共享内容的视图，position 到 limit 之间为 JSON 对象
+     * @throws IllegalArgumentException 当响应体不符合预期格式时抛出
+     */
+    ByteBuffer unwrap(ByteBuffer body);
+
+    /**
+     * 形如 '&lt;script type="..."&gt;{...}&lt;/script&gt;' 的 HTML 标签。
+     *
+     * @param type script 标签的 type 属性，例如 "application/json"
+     * @return 对应的包装格式
+     */
+    static PayloadEnvelope scriptTag(String type) {
+        byte[] open = ("<script type=\"" + type + "\">").getBytes(StandardCharsets.US_ASCII);
+        byte[] close = "</script>".getBytes(StandardCharsets.US_ASCII);
+        return body -> {
+            int start = indexOf(body, open, body.position());
+            if (start < 0) {
+                throw new IllegalArgumentException("未找到符合格式的JSON数据");
+            }
+            start += open.length;
+            int end = indexOf(body, close, start);
+            if (end < 0) {
+                throw new IllegalArgumentException("未找到符合格式的JSON数据");
+            }
+            return body.duplicate().position(start).limit(end).slice();
+        };
+    }
+
+    /**
+     * 依次尝试每个独立的 'var' 关键字（前后都不是标识符字符），要求同一行内紧接着 '变量名 ='，
+     * JSON 对象从 '=' 之后的第一个 '{' 开始，到同一行最后一个 '}' 结束。
+     */
+    private static ByteBuffer unwrapVarAssignment(ByteBuffer body) {
+        byte[] var = {'v', 'a', 'r'};
+        int from = body.position();
+        int limit = body.limit();
+        for (int at = indexOf(body, var, from); at >= 0; at = indexOf(body, var, at + 1)) {
+            if (at > from && isIdentifierPart(body.get(at - 1))) {
+                continue;
+            }
+            int start = objectStart(body, at + var.length, limit);
+            if (start < 0) {
+                continue;
+            }
+            int end = -1;
+            for (int i = start; i < limit; i++) {
+                byte b = body.get(i);
+                if (b == '}') {
+                    end = i + 1;
+                } else if (b == '\n' || b == '\r') {
+                    break;
+                }
+            }
+            if (end > 0) {
+                return body.duplicate().position(start).limit(end).slice();
+            }
+        }
+        throw new IllegalArgumentException("输入字符串不符合预期格式");
+    }
+
+    /**
+     * 从 'var' 之后开始匹配 ' 变量名 = {'，返回 '{' 的位置；格式不符时返回 -1。
+     */
+    private static int objectStart(ByteBuffer body, int i, int limit) {
+        int mark = i;
+        while (i < limit && isInlineWhitespace(body.get(i))) {
+            i++;
+        }
+        if (i == mark) {
+            return -1;
+        }
+        mark = i;
+        while (i < limit && isIdentifierPart(body.get(i))) {
+            i++;
+        }
+        if (i == mark) {
+            return -1;
+        }
+        while (i < limit && isInlineWhitespace(body.get(i))) {
+            i++;
+        }
+        if (i >= limit || body.get(i) != '=') {
+            return -1;
+        }
+        i++;
+        while (i < limit && isWhitespace(body.get(i))) {
+            i++;
+        }
+        return i < limit && body.get(i) == '{' ? i : -1;
+    }
+
+    private static int indexOf(ByteBuffer body, byte[] pattern, int from) {
+        int last = body.limit() - pattern.length;
+        outer:
+        for (int i = from; i <= last; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (body.get(i + j) != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * ASCII 字母、数字、'_'、'$'，以及 UTF-8 多字节字符的组成字节。
+     */
+    private static boolean isIdentifierPart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '_' || b == '$' || b < 0;
+    }
+
+    private static boolean isInlineWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+}
@@ -3,10 +3,20 @@ package com.hikarukimi.taimountain.util;
 
 /**
  * RegexUtil 提供了用于处理和提取 JSON 数据的正则表达式工具方法。
+ * <p>
+ * 上游响应的解析已改用 PayloadEnvelope 在原始字节上定位 JSON，此类保留用于处理已解码的字符串。
  *
  * @author Hikarukimi
  */
 public final class RegexUtil {
+    // 'var variableName = {...};' 形式的变量赋值
+    private static final java.util.regex.Pattern VAR_PARAMETER_PATTERN =
+            java.util.regex.Pattern.compile("var\\s+\\w+\\s*=\\s*(\\{.*})\\s*;?");
+
+    // '<script type="application/json">...</script>' 形式的 HTML 标签
+    private static final java.util.regex.Pattern HTML_TAG_PATTERN =
+            java.util.regex.Pattern.compile("<script\\s+type=\"application/json\">(.*?)</script>");
+
     // 私有构造函数防止实例化
     private RegexUtil() {
         throw new AssertionError("Utility class should not be instantiated");
@@ -27,12 +37,8 @@ public final class RegexUtil {
             throw new IllegalArgumentException("输入字符串不能为空");
         }
 
-        // 定义一个正则表达式来匹配 'var variableName = {...};'
-        String regex = "var\\s+\\w+\\s*=\\s*(\\{.*})\\s*;?";
-
-        // 使用正则表达式找到匹配的部分
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regex);
-        java.util.regex.Matcher matcher = pattern.matcher(input);
+        // 使用预编译的正则表达式找到匹配的部分
+        java.util.regex.Matcher matcher = VAR_PARAMETER_PATTERN.matcher(input);
 
         // 如果找到了匹配的部分，则返回捕获组中的 JSON 字符串
         if (matcher.find()) {
@@ -50,9 +56,7 @@ public final class RegexUtil {
      * @throws IllegalArgumentException 当未找到符合格式的JSON数据时抛出
      */
     public static String extractJsonFromHtmlTag(String input) {
-        String regex = "<script\\s+type=\"application/json\">(.*?)</script>";
-        java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(regex);
-        java.util.regex.Matcher matcher = pattern.matcher(input);
+        java.util.regex.Matcher matcher = HTML_TAG_PATTERN.matcher(input);
 
         if (matcher.find()) {
             return matcher.group(1);
@@ -0,0 +1,97 @@
+package com.hikarukimi.taimountain.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Vector API 的危险天气判定。
+ * <p>
+ * 每次比较一整个向量宽度的小时，比较结果的掩码直接拼入位图字；不足一个向量宽度的尾部
+ * 交给标量实现。判定阈值引用 HazardEngine 中的常量。只能通过 HazardEngine.vector() 创建。
+ * <p>
+ * 本类位于单独的源码目录，只在使用 -Pvector 构建时编译，默认构建不需要 jdk.incubator.vector 模块。
+ *
+ * @author Hikarukimi
+ */
+final class VectorHazardEngine extends HazardEngine {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    void evaluateWord(double[] temp, double[] rh, double[] dewPt, double[] windSpd, double[] cloudCover,
+                      double[] rainAmount, int base, int count, int word, HazardMasks out) {
+        int step = SPECIES.length();
+        int vectorCount = count - count % step;
+        long rime = 0;
+        long freezingRain = 0;
+        long seaOfClouds = 0;
+        long blizzard = 0;
+        long freezing = 0;
+        for (int lane = 0; lane < vectorCount; lane += step) {
+            int i = base + lane;
+            DoubleVector t = DoubleVector.fromArray(SPECIES, temp, i);
+            DoubleVector h = DoubleVector.fromArray(SPECIES, rh, i);
+            DoubleVector d = DoubleVector.fromArray(SPECIES, dewPt, i);
+            DoubleVector w = DoubleVector.fromArray(SPECIES, windSpd, i);
+            DoubleVector c = DoubleVector.fromArray(SPECIES, cloudCover, i);
+            DoubleVector r = DoubleVector.fromArray(SPECIES, rainAmount, i);
+
+            VectorMask<Double> dewNearTemp = d.compare(VectorOperators.GE, t.sub(DEW_POINT_SPREAD))
+                    .and(d.compare(VectorOperators.LE, t.add(DEW_POINT_SPREAD)));
+            VectorMask<Double> overcast = c.compare(VectorOperators.GE, OVERCAST_CLOUD_COVER);
+            VectorMask<Double> humid = h.compare(VectorOperators.GE, ICING_MIN_HUMIDITY);
+            VectorMask<Double> belowZero = t.compare(VectorOperators.LT, FREEZING_POINT);
+
+            rime |= t.compare(VectorOperators.GE, RIME_MIN_TEMP)
+                    .and(t.compare(VectorOperators.LE, FREEZING_POINT))
+                    .and(humid)
+                    .and(dewNearTemp)
+                    .and(w.compare(VectorOperators.GE, RIME_MIN_WIND))
+                    .and(w.compare(VectorOperators.LE, RIME_MAX_WIND))
+                    .and(overcast)
+                    .toLong() << lane;
+            freezingRain |= belowZero
+                    .and(r.compare(VectorOperators.GT, 0.0))
+                    .and(humid)
+                    .and(dewNearTemp)
+                    .and(overcast)
+                    .toLong() << lane;
+            seaOfClouds |= c.compare(VectorOperators.GT, SEA_OF_CLOUDS_MIN_COVER).toLong() << lane;
+            VectorMask<Double> strongGale = w.compare(VectorOperators.GE, STRONG_GALE_SPEED);
+            blizzard |= r.compare(VectorOperators.GT, BLIZZARD_MIN_RAIN)
+                    .and(strongGale)
+                    .and(h.compare(VectorOperators.GE, BLIZZARD_MIN_HUMIDITY))
+                    .and(belowZero)
+                    .toLong() << lane;
+            freezing |= t.compare(VectorOperators.LE, FREEZING_POINT)
+                    .and(d.compare(VectorOperators.LE, FREEZING_POINT))
+                    .and(h.compare(VectorOperators.GT, FREEZING_MIN_HUMIDITY))
+                    .toLong() << lane;
+
+            long windWarning = w.compare(VectorOperators.GE, WIND_WARNING_SPEED).toLong();
+            long gale = w.compare(VectorOperators.GE, GALE_SPEED).toLong();
+            long strong = strongGale.toLong();
+            for (int k = 0; k < step; k++) {
+                out.windLevel[i + k] = (byte) (((windWarning >>> k) & 1) + ((gale >>> k) & 1) + ((strong >>> k) & 1));
+            }
+        }
+
+        if (vectorCount < count) {
+            // 尾部按标量计算，写入后再与向量部分合并
+            super.evaluateWord(temp, rh, dewPt, windSpd, cloudCover, rainAmount,
+                    base + vectorCount, count - vectorCount, word, out);
+            rime |= out.rime[word] << vectorCount;
+            freezingRain |= out.freezingRain[word] << vectorCount;
+            seaOfClouds |= out.seaOfClouds[word] << vectorCount;
+            blizzard |= out.blizzard[word] << vectorCount;
+            freezing |= out.freezing[word] << vectorCount;
+        }
+        out.rime[word] = rime;
+        out.freezingRain[word] = freezingRain;
+        out.seaOfClouds[word] = seaOfClouds;
+        out.blizzard[word] = blizzard;
+        out.freezing[word] = freezing;
+    }
+}
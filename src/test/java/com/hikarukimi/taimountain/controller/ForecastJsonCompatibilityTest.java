@@ -0,0 +1,69 @@
+package com.hikarukimi.taimountain.controller;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hikarukimi.taimountain.Response;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.util.MsnOverviewParser;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * /weathers/forecast 写出 Frame 的 JSON 文本后，响应内容应与原来由 Jackson 序列化 toMap() 的结果相同（不比较字段顺序）。
+ *
+ * @author Hikarukimi
+ */
+@JsonTest
+class ForecastJsonCompatibilityTest {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void recordedPayloadMatchesJackson() throws IOException {
+        assertSameJson(MsnOverviewParser.parse(payload()));
+    }
+
+    @Test
+    void nullsAndSubSecondTimesMatchJackson() throws IOException {
+        JSONObject root = JSON.parseObject(payload());
+        JSONObject weather = root.getJSONArray("responses").getJSONObject(0).getJSONArray("weather").getJSONObject(0);
+        JSONObject current = weather.getJSONObject("current");
+        current.put("created", "2025-03-16T07:41:00.250Z");
+        current.remove("cap");
+        current.remove("pvdrWindDir");
+        JSONObject hour = weather.getJSONObject("forecast").getJSONArray("days").getJSONObject(0)
+                .getJSONArray("hourly").getJSONObject(0);
+        hour.put("created", "2025-03-16T08:00:00Z");
+        hour.remove("cap");
+
+        ForecastData data = MsnOverviewParser.parse(root.toJSONString());
+
+        assertThat(data.getCurrent().getCap()).isNull();
+        assertSameJson(data);
+    }
+
+    private void assertSameJson(ForecastData data) throws IOException {
+        String expected = objectMapper.writeValueAsString(Response.data(data.toMap()));
+        String actual = objectMapper.writeValueAsString(WeatherController.encoded(Response.data(data.getFrame())));
+
+        JsonNode expectedTree = objectMapper.readTree(expected);
+        JsonNode actualTree = objectMapper.readTree(actual);
+        assertThat(actualTree).isEqualTo(expectedTree);
+    }
+
+    private static String payload() throws IOException {
+        try (InputStream in = ForecastJsonCompatibilityTest.class.getResourceAsStream("/msn-overview.json")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
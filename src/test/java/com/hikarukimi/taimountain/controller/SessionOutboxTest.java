@@ -0,0 +1,245 @@
+package com.hikarukimi.taimountain.controller;
+
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import jakarta.websocket.CloseReason;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.SendResult;
+import jakarta.websocket.Session;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * SessionOutbox 的逐帧发送、队列满时的 COALESCE、DROP、DISCONNECT 策略，以及空闲 ping。
+ * <p>
+ * 统计计数在所有会话间共享，这里只比较每个用例前后的差值。
+ *
+ * @author Hikarukimi
+ */
+class SessionOutboxTest {
+
+    private Session session;
+
+    private RemoteEndpoint.Async remote;
+
+    private Map<String, Object> before;
+
+    @BeforeEach
+    void setUp() {
+        session = mock(Session.class);
+        remote = mock(RemoteEndpoint.Async.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("test");
+        when(session.getAsyncRemote()).thenReturn(remote);
+        when(session.getUserProperties()).thenReturn(new HashMap<>());
+        before = SessionOutbox.getStats();
+    }
+
+    @Test
+    void sendsOneFrameAtATime() {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.COALESCE, 4);
+
+        assertThat(outbox.offer("a", false)).isTrue();
+        assertThat(outbox.offer("b", false)).isTrue();
+        assertThat(outbox.offer(new byte[]{1}, false)).isTrue();
+        verify(remote, times(1)).sendText(anyString(), any());
+
+        outbox.onResult(new SendResult());
+        outbox.onResult(new SendResult());
+        outbox.onResult(new SendResult());
+
+        InOrder order = inOrder(remote);
+        order.verify(remote).sendText("a", outbox);
+        order.verify(remote).sendText("b", outbox);
+        order.verify(remote).sendBinary(ByteBuffer.wrap(new byte[]{1}), outbox);
+        assertThat(delta("sent")).isEqualTo(3);
+        assertThat(delta("queued")).isZero();
+    }
+
+    @Test
+    void failedSendContinuesWithNextFrame() {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.COALESCE, 4);
+        outbox.offer("a", false);
+        outbox.offer("b", false);
+
+        outbox.onResult(new SendResult(new IOException("reset")));
+
+        verify(remote).sendText("b", outbox);
+        assertThat(delta("failed")).isEqualTo(1);
+    }
+
+    @Test
+    void coalesceReplacesQueuedFramesWithFullFrame() {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.COALESCE, 2);
+        outbox.offer("full-1", true);
+        outbox.offer("delta-2", false);
+        outbox.offer("delta-3", false);
+
+        // 队列已满时增量帧被拒绝，调用方改发完整帧
+        assertThat(outbox.offer("delta-4", false)).isFalse();
+        assertThat(outbox.offer("full-4", true)).isTrue();
+        outbox.onResult(new SendResult());
+        outbox.onResult(new SendResult());
+
+        verify(remote).sendText("full-4", outbox);
+        verify(remote, never()).sendText("delta-2", outbox);
+        verify(remote, never()).sendText("delta-3", outbox);
+        assertThat(delta("coalesced")).isEqualTo(2);
+        assertThat(delta("dropped")).isEqualTo(1);
+        assertThat(delta("queued")).isZero();
+    }
+
+    @Test
+    void dropDiscardsNewFramesWhenFull() {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.DROP, 1);
+        outbox.offer("a", true);
+        outbox.offer("b", true);
+
+        assertThat(outbox.offer("c", true)).isFalse();
+        outbox.onResult(new SendResult());
+        outbox.onResult(new SendResult());
+
+        verify(remote).sendText("b", outbox);
+        verify(remote, never()).sendText("c", outbox);
+        assertThat(delta("dropped")).isEqualTo(1);
+        assertThat(delta("coalesced")).isZero();
+    }
+
+    @Test
+    void disconnectClosesSessionWhenFull() throws IOException {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.DISCONNECT, 1);
+        outbox.offer("a", false);
+        outbox.offer("b", false);
+
+        assertThat(outbox.offer("c", false)).isFalse();
+
+        ArgumentCaptor<CloseReason> reason = ArgumentCaptor.forClass(CloseReason.class);
+        verify(session, timeout(5000)).close(reason.capture());
+        assertThat(reason.getValue().getCloseCode()).isEqualTo(CloseReason.CloseCodes.TRY_AGAIN_LATER);
+        assertThat(delta("disconnected")).isEqualTo(1);
+        assertThat(delta("queued")).isZero();
+        // 断开后不再接受新帧，也不再发送队列中的帧
+        assertThat(outbox.offer("d", false)).isFalse();
+        outbox.onResult(new SendResult());
+        verify(remote, times(1)).sendText(anyString(), any());
+    }
+
+    @Test
+    void disconnectClosesSessionThatFallsBehind() throws Exception {
+        SessionOutbox outbox = new SessionOutbox(session, push(WeatherProperties.OutboxPolicy.DISCONNECT, 8, Duration.ofMillis(1)));
+        outbox.offer("a", false);
+        Thread.sleep(10);
+
+        assertThat(outbox.offer("b", false)).isFalse();
+
+        verify(session, timeout(5000)).close(any(CloseReason.class));
+        assertThat(delta("disconnected")).isEqualTo(1);
+    }
+
+    @Test
+    void disconnectDoesNotWaitForClose() throws Exception {
+        CountDownLatch closing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 正在发送的帧一直没有回调，容器的关闭帧要等它发送完成
+        doAnswer(invocation -> {
+            closing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(session).close(any(CloseReason.class));
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.DISCONNECT, 1);
+        outbox.offer("a", false);
+        outbox.offer("b", false);
+
+        long start = System.nanoTime();
+        assertThat(outbox.offer("c", false)).isFalse();
+        long elapsed = System.nanoTime() - start;
+
+        assertThat(closing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(elapsed).isLessThan(TimeUnit.SECONDS.toNanos(1));
+        // 关闭期间调用方不会被阻塞，后续帧直接被拒绝
+        assertThat(outbox.offer("d", false)).isFalse();
+        release.countDown();
+    }
+
+    @Test
+    void closedSessionRejectsFrames() {
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.COALESCE, 4);
+        outbox.offer("a", false);
+        outbox.offer("b", false);
+
+        outbox.discard();
+
+        assertThat(outbox.offer("c", false)).isFalse();
+        assertThat(delta("queued")).isZero();
+        outbox.onResult(new SendResult());
+        verify(remote, times(1)).sendText(anyString(), any());
+    }
+
+    @Test
+    void pingRunsOffTheCallerAndHoldsFramesUntilDone() throws Exception {
+        CountDownLatch pinging = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            pinging.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(remote).sendPing(any());
+        SessionOutbox outbox = outbox(WeatherProperties.OutboxPolicy.COALESCE, 4);
+
+        // 调用线程不等待 ping 完成
+        outbox.pingIfIdle(0);
+        assertThat(pinging.await(5, TimeUnit.SECONDS)).isTrue();
+        outbox.pingIfIdle(0);
+        assertThat(outbox.offer("a", false)).isTrue();
+        verify(remote, never()).sendText(anyString(), any());
+
+        release.countDown();
+
+        verify(remote, timeout(5000)).sendText("a", outbox);
+        verify(remote, times(1)).sendPing(any());
+    }
+
+    @Test
+    void blockingSendTimeoutIsSetOnSession() {
+        outbox(WeatherProperties.OutboxPolicy.COALESCE, 4);
+
+        assertThat(session.getUserProperties()).containsKey("org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT");
+    }
+
+    private SessionOutbox outbox(WeatherProperties.OutboxPolicy policy, int maxQueue) {
+        return new SessionOutbox(session, push(policy, maxQueue, Duration.ofMinutes(1)));
+    }
+
+    private static WeatherProperties.Push push(WeatherProperties.OutboxPolicy policy, int maxQueue, Duration maxLag) {
+        WeatherProperties.Push push = new WeatherProperties.Push();
+        push.setPolicy(policy);
+        push.setMaxQueue(maxQueue);
+        push.setMaxLag(maxLag);
+        return push;
+    }
+
+    private long delta(String key) {
+        return (Long) SessionOutbox.getStats().get(key) - (Long) before.get(key);
+    }
+}
@@ -0,0 +1,214 @@
+package com.hikarukimi.taimountain.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hikarukimi.taimountain.Response;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.BusinessException;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import com.hikarukimi.taimountain.service.Frame;
+import com.hikarukimi.taimountain.service.HistoryStore;
+import com.hikarukimi.taimountain.service.RefreshScheduler;
+import com.hikarukimi.taimountain.service.WeatherService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * WeatherController 的 ETag、If-None-Match、Cache-Control 和 Age，以及预报地点的校验。
+ *
+ * @author Hikarukimi
+ */
+class WeatherControllerTest {
+
+    private static final String LOCATION = "YD_URL";
+
+    private static final long VERSION = 0xabcdefL;
+
+    private static final String ETAG = "\"abcdef\"";
+
+    private WeatherService weatherService;
+
+    private WeatherController controller;
+
+    @BeforeEach
+    void setUp() {
+        weatherService = mock(WeatherService.class);
+        WeatherProperties properties = new WeatherProperties();
+        controller = new WeatherController(weatherService, mock(RefreshScheduler.class), mock(HistoryStore.class), properties);
+    }
+
+    @Test
+    void matchesUsesWeakComparison() {
+        assertThat(WeatherController.matches(null, ETAG)).isFalse();
+        assertThat(WeatherController.matches(ETAG, ETAG)).isTrue();
+        assertThat(WeatherController.matches("W/" + ETAG, ETAG)).isTrue();
+        assertThat(WeatherController.matches("\"1\", W/\"2\" , " + ETAG, ETAG)).isTrue();
+        assertThat(WeatherController.matches("*", ETAG)).isTrue();
+        assertThat(WeatherController.matches("\"1\", \"2\"", ETAG)).isFalse();
+        // ETag 必须带引号
+        assertThat(WeatherController.matches("abcdef", ETAG)).isFalse();
+    }
+
+    @Test
+    void freshSnapshotCarriesValidators() {
+        stubForecast(9_500);
+
+        ResponseEntity<Response> response = controller.forecast(LOCATION, null).block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody().getData()).isEqualTo("payload");
+        assertThat(response.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo("max-age=20, public, stale-while-revalidate=300");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("9");
+    }
+
+    @Test
+    void matchingIfNoneMatchReturnsNotModifiedWithoutBody() {
+        stubForecast(0);
+
+        ResponseEntity<Response> strong = controller.forecast(LOCATION, ETAG).block();
+        ResponseEntity<Response> weak = controller.forecast(LOCATION, "W/" + ETAG).block();
+        ResponseEntity<Response> other = controller.forecast(LOCATION, "\"1\"").block();
+
+        assertThat(strong.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(strong.getBody()).isNull();
+        assertThat(strong.getHeaders().getETag()).isEqualTo(ETAG);
+        assertThat(strong.getHeaders().getCacheControl()).startsWith("max-age=");
+        assertThat(weak.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(other.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(other.getBody()).isNotNull();
+    }
+
+    @Test
+    void staleSnapshotHasZeroMaxAge() {
+        stubForecast(95_000);
+
+        ResponseEntity<Response> response = controller.forecast(LOCATION, null).block();
+
+        assertThat(response.getHeaders().getCacheControl()).startsWith("max-age=0,");
+        assertThat(response.getHeaders().getFirst(HttpHeaders.AGE)).isEqualTo("95");
+    }
+
+    @Test
+    void combinedEtagChangesWithAnyLocation() {
+        long now = System.currentTimeMillis();
+        stubForecasts(snapshot(1, now), snapshot(2, now));
+        ResponseEntity<Response> first = controller.forecasts(List.of(LOCATION, "WST_URL"), null).block();
+        String etag = first.getHeaders().getETag();
+
+        assertThat(etag).isNotNull();
+        assertThat(controller.forecasts(List.of(LOCATION, "WST_URL"), etag).block().getStatusCode())
+                .isEqualTo(HttpStatus.NOT_MODIFIED);
+
+        stubForecasts(snapshot(1, now), snapshot(3, now));
+        ResponseEntity<Response> changed = controller.forecasts(List.of(LOCATION, "WST_URL"), etag).block();
+
+        assertThat(changed.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(changed.getHeaders().getETag()).isNotEqualTo(etag);
+    }
+
+    @Test
+    void combinedWithFailureIsNotCacheable() {
+        long now = System.currentTimeMillis();
+        stubForecasts(snapshot(1, now), new Snapshot<>(Response.error("down"), now, 0));
+
+        ResponseEntity<Response> response = controller.forecasts(List.of(LOCATION, "WST_URL"), "*").block();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getETag()).isNull();
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo("no-store");
+    }
+
+    @Test
+    void basicLocationIsRejected() {
+        assertThatThrownBy(() -> controller.forecast("BASIC_URL", null)).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> controller.forecasts(List.of("BASIC_URL"), null)).isInstanceOf(BusinessException.class);
+    }
+
+    @Test
+    void frameIsWrittenFromCachedUtf8Bytes() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        // 缓存的字节与文本不同，输出中出现的是缓存的字节
+        Frame frame = new Frame(Map.of("a", 1)) {
+            @Override
+            public synchronized byte[] getUtf8() {
+                return "{\"b\":\"泰山\"}".getBytes(StandardCharsets.UTF_8);
+            }
+        };
+        Map<String, Response> combined = new LinkedHashMap<>();
+        combined.put(LOCATION, WeatherController.encoded(Response.data(frame)));
+
+        assertThat(utf8(mapper.writeValueAsBytes(WeatherController.encoded(Response.data(frame)))))
+                .isEqualTo("{\"code\":200,\"message\":\"success\",\"data\":{\"b\":\"泰山\"}}");
+        assertThat(utf8(mapper.writeValueAsBytes(Response.data(combined))))
+                .isEqualTo("{\"code\":200,\"message\":\"success\",\"data\":{\"YD_URL\":"
+                        + "{\"code\":200,\"message\":\"success\",\"data\":{\"b\":\"泰山\"}}}}");
+    }
+
+    @Test
+    void largeFrameIsWrittenWhole() throws Exception {
+        // 超过 Jackson 输出缓冲区的帧直接写入输出流
+        Frame frame = new Frame(Map.of("text", "雪".repeat(20_000)));
+
+        String json = utf8(new ObjectMapper().writeValueAsBytes(WeatherController.encoded(Response.data(frame))));
+
+        assertThat(json).isEqualTo("{\"code\":200,\"message\":\"success\",\"data\":" + frame.getText() + "}");
+    }
+
+    @Test
+    void parseTimeAcceptsOffsetAndLocalForms() {
+        long eight = 1_714_521_600_000L;
+
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00+08:00", 0)).isEqualTo(eight);
+        assertThat(WeatherController.parseTime("2024-05-01T00:00Z", 0)).isEqualTo(eight);
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00.5+08:00", 0)).isEqualTo(eight + 500);
+        // 查询参数中未编码的 '+' 被解码为空格
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00 08:00", 0)).isEqualTo(eight);
+        // 本地时间按东八区解析，包括带小数秒的形式
+        assertThat(WeatherController.parseTime("2024-05-01T08:00", 0)).isEqualTo(eight);
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00", 0)).isEqualTo(eight);
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00.5", 0)).isEqualTo(eight + 500);
+        assertThat(WeatherController.parseTime("2024-05-01T08:00:00.123456789", 0)).isEqualTo(eight + 123);
+        assertThat(WeatherController.parseTime(String.valueOf(eight), 0)).isEqualTo(eight);
+        assertThat(WeatherController.parseTime(" ", 42)).isEqualTo(42);
+        assertThatThrownBy(() -> WeatherController.parseTime("2024-05-01", 0)).isInstanceOf(BusinessException.class);
+        assertThatThrownBy(() -> WeatherController.parseTime("yesterday", 0)).isInstanceOf(BusinessException.class);
+    }
+
+    /**
+     * 快照在订阅时按给定年龄创建，调用前的耗时不影响 max-age 和 Age。
+     */
+    private void stubForecast(long ageMillis) {
+        when(weatherService.getForecast(LOCATION)).thenReturn(Mono.fromSupplier(() ->
+                new Snapshot<>(Response.data("payload"), System.currentTimeMillis() - ageMillis, VERSION)));
+    }
+
+    private void stubForecasts(Snapshot<Response> first, Snapshot<Response> second) {
+        Map<String, Snapshot<Response>> snapshots = new LinkedHashMap<>();
+        snapshots.put(LOCATION, first);
+        snapshots.put("WST_URL", second);
+        when(weatherService.getForecasts(any())).thenReturn(Mono.just(snapshots));
+    }
+
+    private static String utf8(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Snapshot<Response> snapshot(long version, long fetchedAt) {
+        return new Snapshot<>(Response.data("payload-" + version), fetchedAt, version);
+    }
+}
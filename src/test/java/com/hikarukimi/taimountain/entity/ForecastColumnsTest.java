@@ -0,0 +1,65 @@
+package com.hikarukimi.taimountain.entity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ForecastColumns 与逐行 WeatherForecast 的等价性。
+ *
+ * @author Hikarukimi
+ */
+class ForecastColumnsTest {
+
+    @Test
+    void createdRoundTripsExactly() {
+        List<WeatherForecast> rows = new ArrayList<>();
+        rows.add(row("2025-03-16T15:00:00+08:00"));
+        rows.add(row("2025-03-16T08:00:00.500Z"));
+        rows.add(row("2025-03-16T17:00:00.000+08:00"));
+        rows.add(row(null));
+        rows.add(row("not a time"));
+
+        ForecastColumns columns = ForecastColumns.from(rows);
+
+        for (int i = 0; i < rows.size(); i++) {
+            assertThat(columns.get(i).getCreated()).isEqualTo(rows.get(i).getCreated());
+        }
+    }
+
+    @Test
+    void indexOfCreatedMatchesInstantAcrossOffsets() {
+        ForecastColumns columns = ForecastColumns.from(List.of(
+                row("2025-03-16T15:00:00+08:00"), row("2025-03-16T07:00:00Z")));
+
+        assertThat(columns.indexOfCreated(columns.getCreated(1))).isEqualTo(0);
+        assertThat(columns.indexOfCreated(Long.MIN_VALUE)).isEqualTo(-1);
+    }
+
+    @Test
+    void rowEqualsComparesCreatedText() {
+        ForecastColumns a = ForecastColumns.from(List.of(row("2025-03-16T08:00:00Z")));
+        ForecastColumns b = ForecastColumns.from(List.of(row("2025-03-16T08:00:00+00:00")));
+
+        assertThat(a.rowEquals(0, a, 0)).isTrue();
+        assertThat(a.rowEquals(0, b, 0)).isFalse();
+    }
+
+    private static WeatherForecast row(String created) {
+        WeatherForecast row = new WeatherForecast();
+        row.setCap("多云");
+        row.setTemp(3.0);
+        row.setFeels(1.0);
+        row.setRh(80.0);
+        row.setDewPt(-1.0);
+        row.setWindSpd(12.0);
+        row.setCloudCover(95.0);
+        row.setCreated(created);
+        row.setSunrise("2025-03-16T06:21:00+08:00");
+        row.setSunset("2025-03-16T18:13:00+08:00");
+        return row;
+    }
+}
@@ -0,0 +1,104 @@
+package com.hikarukimi.taimountain.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * CircuitBreaker 的状态转换：CLOSED → OPEN → HALF_OPEN → CLOSED / OPEN。
+ * <p>
+ * open-duration 为 0 时 OPEN 在下一次 tryAcquire 立即进入 HALF_OPEN，用来在不等待真实时间的情况下测试探测请求。
+ *
+ * @author Hikarukimi
+ */
+class CircuitBreakerTest {
+
+    private static final long LONG_OPEN_MILLIS = 60_000;
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, LONG_OPEN_MILLIS);
+
+        fail(breaker, 2);
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        fail(breaker, 1);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.tryAcquire()).isFalse();
+        assertThat(breaker.getRejected()).isEqualTo(2);
+        assertThat(breaker.getStats())
+                .containsEntry("state", "OPEN")
+                .containsEntry("consecutiveFailures", 3)
+                .containsEntry("opened", 1L);
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(3, LONG_OPEN_MILLIS);
+
+        fail(breaker, 2);
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onSuccess();
+        fail(breaker, 2);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    void halfOpenAllowsSingleProbeThatClosesOnSuccess() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        fail(breaker, 1);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isFalse();
+        breaker.onSuccess();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void failedProbeReopens() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 0);
+        fail(breaker, 3);
+
+        assertThat(breaker.tryAcquire()).isTrue();
+        breaker.onFailure();
+
+        // HALF_OPEN 下一次失败即重新进入 OPEN，不需要再累计 failure-threshold 次
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(breaker.getStats()).containsEntry("opened", 2L);
+    }
+
+    @Test
+    void cancelledProbeReleasesTheSlot() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 0);
+        fail(breaker, 1);
+        assertThat(breaker.tryAcquire()).isTrue();
+
+        breaker.onCancel();
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(breaker.tryAcquire()).isTrue();
+        assertThat(breaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void thresholdBelowOneIsTreatedAsOne() {
+        CircuitBreaker breaker = new CircuitBreaker(0, LONG_OPEN_MILLIS);
+
+        fail(breaker, 1);
+
+        assertThat(breaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private static void fail(CircuitBreaker breaker, int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(breaker.tryAcquire()).isTrue();
+            breaker.onFailure();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.hikarukimi.taimountain.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.hikarukimi.taimountain.entity.ForecastData;
+import com.hikarukimi.taimountain.util.MsnOverviewParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * ForecastStream 的增量帧与指纹去重。
+ * <p>
+ * 增量帧按类注释中的规则应用到上一次的完整帧上，结果应与新快照的完整帧相同。
+ *
+ * @author Hikarukimi
+ */
+class ForecastStreamTest {
+
+    private String payload;
+
+    /**
+     * 可修改的响应副本，修改 weather 后由 modified() 重新解析。
+     */
+    private JSONObject root;
+
+    private JSONObject weather;
+
+    @BeforeEach
+    void loadPayload() throws IOException {
+        try (InputStream in = ForecastStreamTest.class.getResourceAsStream("/msn-overview.json")) {
+            payload = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        root = JSON.parseObject(payload);
+        weather = root.getJSONArray("responses").getJSONObject(0).getJSONArray("weather").getJSONObject(0);
+    }
+
+    @Test
+    void firstPublishHasNoDelta() {
+        ForecastStream stream = new ForecastStream();
+
+        ForecastStream.Update update = stream.publish(MsnOverviewParser.parse(payload));
+
+        assertThat(update.isChanged()).isTrue();
+        assertThat(update.getSeq()).isEqualTo(1);
+        assertThat(update.getDeltaFrame()).isNull();
+        assertThat(JSON.parseObject(stream.getFullFrame().getText()))
+                .containsEntry("type", "full")
+                .containsEntry("seq", 1);
+    }
+
+    @Test
+    void sameFingerprintIsSkipped() {
+        ForecastStream stream = new ForecastStream();
+        ForecastData first = MsnOverviewParser.parse(payload);
+        stream.publish(first);
+        Frame full = stream.getFullFrame();
+
+        ForecastStream.Update same = stream.publish(first);
+        ForecastStream.Update reparsed = stream.publish(MsnOverviewParser.parse(payload));
+
+        assertThat(same.isChanged()).isFalse();
+        assertThat(reparsed.isChanged()).isFalse();
+        assertThat(reparsed.getSeq()).isEqualTo(1);
+        assertThat(reparsed.getDeltaFrame()).isNull();
+        assertThat(stream.getFullFrame()).isSameAs(full);
+    }
+
+    @Test
+    void currentChangeSendsOnlyChangedFields() {
+        weather.getJSONObject("current").put("temp", 42.5);
+
+        JSONObject delta = publishAndApply();
+
+        assertThat(delta.keySet()).containsExactlyInAnyOrder("type", "seq", "base", "current");
+        assertThat(delta.getJSONObject("current").getDoubleValue("temp")).isEqualTo(42.5);
+        assertThat(delta.getLong("base")).isEqualTo(delta.getLong("seq") - 1);
+    }
+
+    @Test
+    void removedCurrentFieldIsSentAsNull() {
+        weather.getJSONObject("current").remove("cap");
+
+        JSONObject delta = publishAndApply();
+
+        assertThat(delta.getJSONObject("current")).containsKey("cap");
+        assertThat(delta.getJSONObject("current").get("cap")).isNull();
+    }
+
+    @Test
+    void forecastAdvancingOneHourIsSentAsShift() {
+        JSONArray firstDay = hourly(0);
+        firstDay.remove(0);
+
+        JSONObject delta = publishAndApply();
+
+        JSONObject forecast = delta.getJSONObject("forecast");
+        assertThat(forecast.getIntValue("shift")).isEqualTo(1);
+        assertThat(forecast.getJSONObject("rows")).isEmpty();
+        assertThat(delta).doesNotContainKeys("current", "alerts");
+    }
+
+    @Test
+    void changedAndAppendedRowsAreSentByIndex() {
+        JSONArray firstDay = hourly(0);
+        firstDay.remove(0);
+        JSONArray lastDay = hourly(weather.getJSONObject("forecast").getJSONArray("days").size() - 1);
+        JSONObject appended = lastDay.getJSONObject(lastDay.size() - 1).clone();
+        appended.put("created", "2099-01-01T00:00:00+08:00");
+        lastDay.add(appended);
+        hourly(1).getJSONObject(3).put("temp", -30.0);
+
+        JSONObject delta = publishAndApply();
+
+        JSONObject forecast = delta.getJSONObject("forecast");
+        assertThat(forecast.getIntValue("shift")).isEqualTo(1);
+        assertThat(forecast.getJSONObject("rows")).hasSize(2);
+    }
+
+    @Test
+    void alertChangesAreSentById() {
+        JSONArray alerts = weather.getJSONArray("alerts");
+        JSONObject added = alerts.getJSONObject(0).clone();
+        added.put("id", "alert-2");
+        alerts.set(0, added);
+
+        JSONObject delta = publishAndApply();
+
+        JSONObject changes = delta.getJSONObject("alerts");
+        assertThat(changes.getJSONArray("removed")).containsExactly("alert-1");
+        assertThat(changes.getJSONArray("added")).hasSize(1);
+        assertThat(changes.getJSONArray("added").getJSONObject(0)).containsEntry("id", "alert-2");
+    }
+
+    @Test
+    void fingerprintTracksContent() {
+        long original = MsnOverviewParser.parse(payload).getFingerprint();
+        hourly(2).getJSONObject(5).put("cap", "暴雪");
+
+        assertThat(MsnOverviewParser.parse(payload).getFingerprint()).isEqualTo(original);
+        assertThat(modified().getFingerprint()).isNotEqualTo(original);
+    }
+
+    @Test
+    void seqAdvancesOnlyOnChange() {
+        ForecastStream stream = new ForecastStream();
+        stream.publish(MsnOverviewParser.parse(payload));
+        weather.getJSONObject("current").put("temp", 42.5);
+
+        ForecastStream.Update update = stream.publish(modified());
+
+        assertThat(update.getSeq()).isEqualTo(2);
+        assertThat(stream.getSeq()).isEqualTo(2);
+        assertThat(stream.publish(modified()).getSeq()).isEqualTo(2);
+    }
+
+    /**
+     * 先发布原始数据，再发布修改后的 weather，检查增量帧应用到上一次完整帧的结果，返回增量帧。
+     */
+    private JSONObject publishAndApply() {
+        ForecastStream stream = new ForecastStream();
+        stream.publish(MsnOverviewParser.parse(payload));
+        JSONObject previous = JSON.parseObject(stream.getFullFrame().getText());
+
+        ForecastStream.Update update = stream.publish(modified());
+
+        assertThat(update.isChanged()).isTrue();
+        assertThat(update.getDeltaFrame()).isNotNull();
+        JSONObject delta = JSON.parseObject(update.getDeltaFrame().getText());
+        assertThat(delta).containsEntry("type", "delta");
+        assertThat(delta.getLong("base")).isEqualTo(previous.getLong("seq"));
+
+        JSONObject expected = JSON.parseObject(stream.getFullFrame().getText()).getJSONObject("data");
+        JSONObject actual = apply(previous.getJSONObject("data"), delta);
+        assertThat(actual.getJSONObject("current")).isEqualTo(expected.getJSONObject("current"));
+        assertThat(actual.getJSONArray("forecast")).isEqualTo(expected.getJSONArray("forecast"));
+        assertThat(byId(actual.getJSONArray("alerts"))).isEqualTo(byId(expected.getJSONArray("alerts")));
+        return delta;
+    }
+
+    /**
+     * 按 ForecastStream 类注释中描述的规则应用增量帧。
+     */
+    private static JSONObject apply(JSONObject data, JSONObject delta) {
+        JSONObject current = delta.getJSONObject("current");
+        if (current != null) {
+            data.getJSONObject("current").putAll(current);
+        }
+
+        JSONObject forecast = delta.getJSONObject("forecast");
+        if (forecast != null) {
+            JSONArray rows = data.getJSONArray("forecast");
+            JSONArray shifted = new JSONArray();
+            int size = forecast.getIntValue("size");
+            for (int i = 0; i < size; i++) {
+                int j = i + forecast.getIntValue("shift");
+                shifted.add(j < rows.size() ? rows.get(j) : null);
+            }
+            forecast.getJSONObject("rows").forEach((index, row) -> shifted.set(Integer.parseInt(index), row));
+            data.put("forecast", shifted);
+        }
+
+        JSONObject alerts = delta.getJSONObject("alerts");
+        if (alerts != null) {
+            Map<String, Object> merged = byId(data.getJSONArray("alerts"));
+            alerts.getJSONArray("removed").forEach(merged::remove);
+            for (int i = 0; i < alerts.getJSONArray("added").size(); i++) {
+                JSONObject alert = alerts.getJSONArray("added").getJSONObject(i);
+                merged.put(alert.getString("id"), alert);
+            }
+            data.put("alerts", new JSONArray(merged.values()));
+        }
+        return data;
+    }
+
+    private static Map<String, Object> byId(JSONArray alerts) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (int i = 0; i < alerts.size(); i++) {
+            result.put(alerts.getJSONObject(i).getString("id"), alerts.getJSONObject(i));
+        }
+        return result;
+    }
+
+    private ForecastData modified() {
+        return MsnOverviewParser.parse(root.toJSONString());
+    }
+
+    private JSONArray hourly(int day) {
+        return weather.getJSONObject("forecast").getJSONArray("days").getJSONObject(day).getJSONArray("hourly");
+    }
+}
@@ -0,0 +1,114 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * HedgePolicy 的分位数延迟和对冲令牌桶。
+ *
+ * @author Hikarukimi
+ */
+class HedgePolicyTest {
+
+    @Test
+    void noHedgeUntilEnoughSamples() {
+        HedgePolicy policy = policy(0.95, Duration.ZERO, 1.0);
+
+        record(policy, 31, 10);
+        assertThat(policy.onRequest()).isEqualTo(-1);
+        assertThat(policy.getDelayMillis()).isNaN();
+
+        record(policy, 1, 10);
+        assertThat(policy.onRequest()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @Test
+    void delayIsConfiguredPercentileOfRecentSamples() {
+        HedgePolicy policy = policy(0.95, Duration.ZERO, 1.0);
+
+        // 32 + 16 * 5 个样本，最后一次记录时重新计算：1ms..112ms 的 p95 为第 ceil(0.95 * 112) = 107 个
+        for (int i = 1; i <= 112; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertThat(policy.getDelayMillis()).isEqualTo(107.0);
+        assertThat(policy.getStats()).containsEntry("delayMs", 107L);
+    }
+
+    @Test
+    void delayIsNotBelowMinDelay() {
+        HedgePolicy policy = policy(0.95, Duration.ofMillis(50), 1.0);
+
+        record(policy, 32, 1);
+
+        assertThat(policy.getDelayMillis()).isEqualTo(50.0);
+    }
+
+    @Test
+    void oldSamplesLeaveTheWindow() {
+        HedgePolicy policy = policy(0.5, Duration.ZERO, 1.0);
+
+        record(policy, 256, 1000);
+        assertThat(policy.getDelayMillis()).isEqualTo(1000.0);
+        // 最近 256 个样本全部变快后，延迟只由新样本决定
+        record(policy, 256, 10);
+
+        assertThat(policy.getDelayMillis()).isEqualTo(10.0);
+    }
+
+    @Test
+    void hedgesAreLimitedByTokens() {
+        HedgePolicy policy = policy(0.95, Duration.ZERO, 0.25);
+
+        for (int i = 0; i < 4; i++) {
+            policy.onRequest();
+        }
+        assertThat(policy.tryHedge()).isTrue();
+        assertThat(policy.tryHedge()).isFalse();
+
+        // 令牌最多积累 BURST 个
+        for (int i = 0; i < 1000; i++) {
+            policy.onRequest();
+        }
+        int granted = 0;
+        while (policy.tryHedge()) {
+            granted++;
+        }
+
+        assertThat(granted).isEqualTo(10);
+        assertThat(policy.getHedged()).isEqualTo(11);
+        assertThat(policy.getThrottled()).isEqualTo(2);
+        assertThat(policy.getStats()).containsEntry("requests", 1004L);
+    }
+
+    @Test
+    void zeroRateNeverHedges() {
+        HedgePolicy policy = policy(0.95, Duration.ZERO, 0.0);
+
+        for (int i = 0; i < 100; i++) {
+            policy.onRequest();
+        }
+
+        assertThat(policy.tryHedge()).isFalse();
+        assertThat(policy.getHedged()).isZero();
+    }
+
+    private static HedgePolicy policy(double percentile, Duration minDelay, double maxRate) {
+        WeatherProperties.Hedge hedge = new WeatherProperties.Hedge();
+        hedge.setPercentile(percentile);
+        hedge.setMinDelay(minDelay);
+        hedge.setMaxRate(maxRate);
+        return new HedgePolicy(hedge);
+    }
+
+    private static void record(HedgePolicy policy, int samples, long millis) {
+        for (int i = 0; i < samples; i++) {
+            policy.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.hikarukimi.taimountain.service;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.config.WeatherProperties;
+import com.hikarukimi.taimountain.entity.CurrentWeather;
+import com.hikarukimi.taimountain.entity.Observation;
+import com.hikarukimi.taimountain.entity.Rollup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * HistoryStore 的按小时、按天汇总。
+ * <p>
+ * 汇总结果与直接对原始观测分组计算的结果比较；重启后未结束的区间从原始观测中重建。
+ *
+ * @author Hikarukimi
+ */
+class HistoryStoreTest {
+
+    private static final UrlConstant LOCATION = UrlConstant.YD_URL;
+
+    /**
+     * 东八区 2025-03-16 00:00 起每 10 分钟一条，共 30 小时，最后一个小时和最后一天都没有结束。
+     */
+    private static final OffsetDateTime START = OffsetDateTime.parse("2025-03-16T00:00:00+08:00");
+
+    private static final int OBSERVATIONS = 30 * 6 - 3;
+
+    @TempDir
+    Path tmp;
+
+    private WeatherProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WeatherProperties();
+        properties.getHistory().setDir(tmp);
+        properties.getHistory().setSegmentRecords(HistorySegment.INDEX_STRIDE);
+    }
+
+    @Test
+    void rollupsMatchRawObservations() {
+        HistoryStore store = new HistoryStore(properties);
+        appendAll(store);
+
+        assertRollupsMatchRaw(store, HistoryResolution.HOUR, 30);
+        assertRollupsMatchRaw(store, HistoryResolution.DAY, 2);
+        store.close();
+    }
+
+    @Test
+    void openBucketsAreRebuiltAfterRestart() {
+        HistoryStore store = new HistoryStore(properties);
+        appendAll(store);
+        store.close();
+
+        HistoryStore reopened = new HistoryStore(properties);
+
+        assertRollupsMatchRaw(reopened, HistoryResolution.HOUR, 30);
+        assertRollupsMatchRaw(reopened, HistoryResolution.DAY, 2);
+        // 重启后继续追加，未结束的区间接着累积
+        assertThat(reopened.append(LOCATION, current(OBSERVATIONS))).isTrue();
+        assertRollupsMatchRaw(reopened, HistoryResolution.HOUR, 30);
+        reopened.close();
+    }
+
+    @Test
+    void rollupQueryIncludesBucketContainingFrom() {
+        HistoryStore store = new HistoryStore(properties);
+        appendAll(store);
+        long from = START.plusHours(3).plusMinutes(25).toInstant().toEpochMilli();
+        long to = START.plusHours(5).toInstant().toEpochMilli();
+
+        List<Rollup> rollups = new ArrayList<>();
+        store.queryRollups(LOCATION, HistoryResolution.HOUR, from, to, rollups::add);
+
+        assertThat(rollups).extracting(Rollup::getTime).containsExactly(
+                START.plusHours(3).toInstant().toEpochMilli(),
+                START.plusHours(4).toInstant().toEpochMilli(),
+                START.plusHours(5).toInstant().toEpochMilli());
+        store.close();
+    }
+
+    @Test
+    void duplicateObservationIsIgnored() {
+        HistoryStore store = new HistoryStore(properties);
+        store.append(LOCATION, current(0));
+
+        assertThat(store.append(LOCATION, current(0))).isFalse();
+        List<Rollup> rollups = new ArrayList<>();
+        store.queryRollups(LOCATION, HistoryResolution.HOUR, Long.MIN_VALUE / 2, Long.MAX_VALUE, rollups::add);
+        assertThat(rollups).singleElement().extracting(Rollup::getCount).isEqualTo(1);
+        store.close();
+    }
+
+    @Test
+    void queryingUnknownLocationCreatesNothing() {
+        HistoryStore store = new HistoryStore(properties);
+        List<Rollup> rollups = new ArrayList<>();
+
+        store.queryRollups(LOCATION, HistoryResolution.DAY, 0, Long.MAX_VALUE, rollups::add);
+        store.query(LOCATION, 0, Long.MAX_VALUE, observation -> rollups.add(null));
+
+        assertThat(rollups).isEmpty();
+        assertThat(tmp.resolve(LOCATION.name())).doesNotExist();
+        assertThatThrownBy(() -> store.queryRollups(LOCATION, HistoryResolution.RAW, 0, 1, rollups::add))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void appendAll(HistoryStore store) {
+        for (int i = 0; i < OBSERVATIONS; i++) {
+            assertThat(store.append(LOCATION, current(i))).isTrue();
+        }
+    }
+
+    /**
+     * 把原始观测按区间分组重新汇总，与存储中的汇总逐个比较。
+     */
+    private static void assertRollupsMatchRaw(HistoryStore store, HistoryResolution resolution, int buckets) {
+        long from = START.toInstant().toEpochMilli();
+        Map<Long, Rollup> expected = new LinkedHashMap<>();
+        store.query(LOCATION, from, Long.MAX_VALUE, (Observation observation) ->
+                expected.computeIfAbsent(resolution.bucketStart(observation.getTime()), Rollup::new).add(observation));
+
+        List<Rollup> actual = new ArrayList<>();
+        store.queryRollups(LOCATION, resolution, from, Long.MAX_VALUE, actual::add);
+
+        assertThat(actual).hasSize(buckets);
+        assertThat(actual).usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(expected.values());
+    }
+
+    private static CurrentWeather current(int i) {
+        JSONObject json = new JSONObject();
+        json.put("created", START.plusMinutes(10L * i).toString());
+        json.put("temp", -10 + i * 0.25);
+        json.put("feels", -12 + i * 0.25);
+        json.put("dewPt", -11 + i * 0.25);
+        json.put("rh", 60 + i % 40);
+        json.put("windSpd", i % 7 * 1.5);
+        json.put("cloudCover", 90);
+        CurrentWeather current = JSON.parseObject(json.toJSONString(), CurrentWeather.class);
+        // 每隔几条没有降雨量数据，降雨量单独计数
+        current.setRainAmount(i % 4 == 0 ? null : i % 5 * 0.2);
+        return current;
+    }
+}
@@ -0,0 +1,159 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.entity.Observation;
+import com.hikarukimi.taimountain.entity.WindLevel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SegmentLog 与 HistorySegment 的写入、跨段查询和重新打开。
+ * <p>
+ * 每个段只容纳 INDEX_STRIDE 条记录，少量数据就能覆盖换段和稀疏索引的块边界。
+ *
+ * @author Hikarukimi
+ */
+class SegmentLogTest {
+
+    private static final int SEGMENT = HistorySegment.INDEX_STRIDE;
+
+    private static final long STEP = 60_000;
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void openingMissingDirectoryCreatesNothing() throws IOException {
+        Path dir = tmp.resolve("missing");
+
+        SegmentLog<Observation> log = SegmentLog.open(dir, ObservationCodec.INSTANCE, SEGMENT);
+
+        assertThat(query(log, Long.MIN_VALUE, Long.MAX_VALUE)).isEmpty();
+        assertThat(log.lastTime()).isEqualTo(Long.MIN_VALUE);
+        assertThat(dir).doesNotExist();
+    }
+
+    @Test
+    void queriesSpanSegmentsInTimeOrder() throws IOException {
+        SegmentLog<Observation> log = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+        for (int i = 0; i < SEGMENT * 3 + 10; i++) {
+            assertThat(log.append(observation(i))).isTrue();
+        }
+
+        assertThat(log.toMap()).containsEntry("segments", 4).containsEntry("records", (long) SEGMENT * 3 + 10);
+        assertThat(times(query(log, time(5), time(SEGMENT * 2 + 3)))).isEqualTo(range(5, SEGMENT * 2 + 3));
+        // 边界落在两条记录之间时只返回范围内的记录
+        assertThat(times(query(log, time(SEGMENT) - 1, time(SEGMENT) + 1))).isEqualTo(range(SEGMENT, SEGMENT));
+        assertThat(query(log, time(SEGMENT * 4), Long.MAX_VALUE)).isEmpty();
+        log.close();
+    }
+
+    @Test
+    void appendIgnoresRecordsThatDoNotMoveForward() throws IOException {
+        SegmentLog<Observation> log = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+        log.append(observation(5));
+
+        assertThat(log.append(observation(5))).isFalse();
+        assertThat(log.append(observation(4))).isFalse();
+        assertThat(log.append(observation(6))).isTrue();
+        assertThat(log.lastTime()).isEqualTo(time(6));
+        log.close();
+    }
+
+    @Test
+    void reopenRestoresRecordsAndContinuesAppending() throws IOException {
+        SegmentLog<Observation> log = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+        for (int i = 0; i < SEGMENT + 5; i++) {
+            log.append(observation(i));
+        }
+        log.close();
+
+        SegmentLog<Observation> reopened = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+
+        assertThat(reopened.lastTime()).isEqualTo(time(SEGMENT + 4));
+        assertThat(times(query(reopened, Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(range(0, SEGMENT + 4));
+        assertThat(reopened.append(observation(SEGMENT + 4))).isFalse();
+        for (int i = SEGMENT + 5; i < SEGMENT * 2 + 1; i++) {
+            assertThat(reopened.append(observation(i))).isTrue();
+        }
+        assertThat(times(query(reopened, Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(range(0, SEGMENT * 2));
+        assertThat(reopened.toMap()).containsEntry("segments", 3);
+        reopened.close();
+    }
+
+    @Test
+    void emptyAndUnrecognizedSegmentsAreSkipped() throws IOException {
+        SegmentLog<Observation> log = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+        for (int i = 0; i < SEGMENT; i++) {
+            log.append(observation(i));
+        }
+        log.close();
+        HistorySegment.create(tmp.resolve("segment-00000005.seg"), ObservationCodec.INSTANCE, SEGMENT).close();
+        Files.write(tmp.resolve("segment-00000003.seg"), new byte[]{1, 2, 3});
+        HistorySegment.create(tmp.resolve("segment-00000004.seg"), RollupCodec.INSTANCE, SEGMENT).close();
+
+        SegmentLog<Observation> reopened = SegmentLog.open(tmp, ObservationCodec.INSTANCE, SEGMENT);
+        reopened.append(observation(SEGMENT));
+
+        assertThat(times(query(reopened, Long.MIN_VALUE, Long.MAX_VALUE))).isEqualTo(range(0, SEGMENT));
+        reopened.close();
+        // 新段的序号大于所有已有文件，不会覆盖被忽略的文件
+        assertThat(tmp.resolve("segment-00000006.seg")).exists();
+    }
+
+    @Test
+    void observationRoundTripsThroughCodec() throws IOException {
+        Observation original = new Observation(time(1), -3.5, -8.25, -4.0, 92.0, 2.5, 1012.0, 35.0, 0.8, 1.0,
+                95.0, Double.NaN, true, false, true, false, true, true, WindLevel.Gale);
+        Observation noWind = new Observation(time(2), 1.0, 1.0, 0.0, 50.0, 0.0, 1000.0, 0.0, 10.0, 0.0,
+                0.0, 2.5, false, true, false, true, false, false, null);
+        HistorySegment<Observation> segment = HistorySegment.create(tmp.resolve("segment-00000001.seg"), ObservationCodec.INSTANCE, SEGMENT);
+        segment.append(original);
+        segment.append(noWind);
+        segment.close();
+
+        HistorySegment<Observation> reopened = HistorySegment.open(tmp.resolve("segment-00000001.seg"), ObservationCodec.INSTANCE);
+        List<Observation> read = new ArrayList<>();
+        reopened.scan(Long.MIN_VALUE, Long.MAX_VALUE, read::add);
+        reopened.close();
+
+        assertThat(read).hasSize(2);
+        // NaN 表示没有降雨量数据，按位比较
+        assertThat(read.get(0)).usingRecursiveComparison().withComparatorForType(Double::compare, Double.class).isEqualTo(original);
+        assertThat(read.get(1)).usingRecursiveComparison().withComparatorForType(Double::compare, Double.class).isEqualTo(noWind);
+    }
+
+    private static Observation observation(int i) {
+        return new Observation(time(i), i, i - 1, i - 2, 80, 3, 1010, 20, 10, 1, 50, i % 3 == 0 ? Double.NaN : i * 0.1,
+                false, false, false, false, false, false, WindLevel.NoWarning);
+    }
+
+    private static long time(int i) {
+        return 1_742_000_000_000L + i * STEP;
+    }
+
+    private static List<Observation> query(SegmentLog<Observation> log, long from, long to) {
+        List<Observation> result = new ArrayList<>();
+        log.query(from, to, result::add);
+        return result;
+    }
+
+    private static List<Long> times(List<Observation> observations) {
+        return observations.stream().map(Observation::getTime).toList();
+    }
+
+    private static List<Long> range(int first, int last) {
+        List<Long> result = new ArrayList<>();
+        for (int i = first; i <= last; i++) {
+            result.add(time(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package com.hikarukimi.taimountain.service;
+
+import com.hikarukimi.taimountain.UrlConstant;
+import com.hikarukimi.taimountain.entity.Snapshot;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * SnapshotCache 的 single-flight、stale-while-revalidate 和 stale-if-error 行为。
+ * <p>
+ * 有效期为 0 的缓存中快照一写入即过期，用来在不等待真实时间的情况下构造过期快照。
+ *
+ * @author Hikarukimi
+ */
+class SnapshotCacheTest {
+
+    private static final UrlConstant LOCATION = UrlConstant.YD_URL;
+
+    private static final Duration LONG = Duration.ofMinutes(1);
+
+    @Test
+    void concurrentMissesShareOneUpstreamRequest() {
+        SnapshotCache<String> cache = new SnapshotCache<>(LONG, Duration.ZERO, Duration.ZERO, String::hashCode);
+        Sinks.One<String> upstream = Sinks.one();
+        AtomicInteger loads = new AtomicInteger();
+        Function<UrlConstant, Mono<String>> loader = location -> {
+            loads.incrementAndGet();
+            return upstream.asMono();
+        };
+
+        List<CompletableFuture<Snapshot<String>>> callers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            callers.add(cache.get(LOCATION, loader).toFuture());
+        }
+        assertThat(callers).noneMatch(CompletableFuture::isDone);
+
+        upstream.tryEmitValue("a");
+
+        assertThat(loads).hasValue(1);
+        Snapshot<String> first = callers.get(0).join();
+        assertThat(first.getValue()).isEqualTo("a");
+        assertThat(callers).allSatisfy(caller -> assertThat(caller.join()).isSameAs(first));
+        assertThat(cache.get(LOCATION, loader).block()).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getStats())
+                .containsEntry("misses", 10L)
+                .containsEntry("hits", 1L)
+                .containsEntry("refreshes", 1L);
+    }
+
+    @Test
+    void cancelledCallerDoesNotCancelSharedRefresh() {
+        SnapshotCache<String> cache = new SnapshotCache<>(LONG, Duration.ZERO, Duration.ZERO, String::hashCode);
+        Sinks.One<String> upstream = Sinks.one();
+        Function<UrlConstant, Mono<String>> loader = location -> upstream.asMono();
+
+        Disposable cancelled = cache.get(LOCATION, loader).subscribe();
+        CompletableFuture<Snapshot<String>> waiting = cache.get(LOCATION, loader).toFuture();
+        cancelled.dispose();
+        upstream.tryEmitValue("a");
+
+        assertThat(waiting.join().getValue()).isEqualTo("a");
+        assertThat(cache.peek(LOCATION).getValue()).isEqualTo("a");
+    }
+
+    @Test
+    void staleSnapshotIsServedWhileRefreshingInBackground() {
+        SnapshotCache<String> cache = new SnapshotCache<>(Duration.ZERO, LONG, Duration.ZERO, String::hashCode);
+        Snapshot<String> old = cache.get(LOCATION, location -> Mono.just("a")).block();
+        Sinks.One<String> upstream = Sinks.one();
+
+        Snapshot<String> served = cache.get(LOCATION, location -> upstream.asMono()).block();
+
+        assertThat(served).isSameAs(old);
+        assertThat(cache.peek(LOCATION)).isSameAs(old);
+        upstream.tryEmitValue("b");
+        assertThat(cache.peek(LOCATION).getValue()).isEqualTo("b");
+        assertThat(cache.getStats())
+                .containsEntry("stale", 1L)
+                .containsEntry("refreshes", 2L);
+    }
+
+    @Test
+    void failedRefreshFallsBackToSnapshotWithinStaleIfError() {
+        SnapshotCache<String> cache = new SnapshotCache<>(Duration.ZERO, Duration.ZERO, LONG, String::hashCode);
+        Snapshot<String> old = cache.get(LOCATION, location -> Mono.just("a")).block();
+
+        Snapshot<String> served = cache.get(LOCATION, location -> Mono.error(new IllegalStateException("down"))).block();
+
+        assertThat(served).isSameAs(old);
+        assertThat(cache.getStats()).containsEntry("staleOnError", 1L);
+    }
+
+    @Test
+    void failedRefreshPropagatesWhenNothingIsUsable() {
+        SnapshotCache<String> cache = new SnapshotCache<>(Duration.ZERO, Duration.ZERO, Duration.ZERO, String::hashCode);
+        cache.get(LOCATION, location -> Mono.just("a")).block();
+
+        assertThatThrownBy(() -> cache.get(LOCATION, location -> Mono.error(new IllegalStateException("down"))).block())
+                .hasMessage("down");
+        assertThatThrownBy(() -> cache.get(LOCATION, location -> Mono.empty()).block())
+                .hasMessage("Empty response body.");
+    }
+
+    @Test
+    void revalidateNeverReturnsStaleSnapshot() {
+        SnapshotCache<String> cache = new SnapshotCache<>(Duration.ZERO, LONG, LONG, String::hashCode);
+        cache.get(LOCATION, location -> Mono.just("a")).block();
+
+        assertThatThrownBy(() -> cache.revalidate(LOCATION, location -> Mono.error(new IllegalStateException("down"))).block())
+                .hasMessage("down");
+        assertThat(cache.revalidate(LOCATION, location -> Mono.just("b")).block().getValue()).isEqualTo("b");
+    }
+
+    @Test
+    void unchangedVersionKeepsPreviousValue() {
+        SnapshotCache<String> cache = new SnapshotCache<>(Duration.ZERO, Duration.ZERO, Duration.ZERO, value -> 1L);
+        String first = new String("a");
+        cache.get(LOCATION, location -> Mono.just(first)).block();
+
+        Snapshot<String> refreshed = cache.get(LOCATION, location -> Mono.just(new String("a"))).block();
+
+        assertThat(refreshed.getValue()).isSameAs(first);
+    }
+
+    @Test
+    void failingVersionFunctionReleasesTheRefresh() {
+        AtomicInteger calls = new AtomicInteger();
+        SnapshotCache<String> cache = new SnapshotCache<>(LONG, Duration.ZERO, Duration.ZERO, value -> {
+            if (calls.getAndIncrement() == 0) {
+                throw new IllegalArgumentException("bad payload");
+            }
+            return value.hashCode();
+        });
+
+        assertThatThrownBy(() -> cache.get(LOCATION, location -> Mono.just("a")).block())
+                .hasMessage("bad payload");
+        // 异常之后同一地点的刷新不应一直被占用
+        assertThat(cache.get(LOCATION, location -> Mono.just("b")).block(Duration.ofSeconds(5)).getValue())
+                .isEqualTo("b");
+    }
+}
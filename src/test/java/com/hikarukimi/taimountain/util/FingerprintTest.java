@@ -0,0 +1,62 @@
+package com.hikarukimi.taimountain.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fingerprint 对字符串、double 和字段顺序的处理。
+ *
+ * @author Hikarukimi
+ */
+class FingerprintTest {
+
+    /**
+     * hashCode 为 Integer.MIN_VALUE。
+     */
+    private static final String NEGATIVE_HASH = "polygenelubricants";
+
+    @Test
+    void stringsWithSameHashCodeButDifferentLengthDiffer() {
+        // 开头的 '\0' 不改变 String.hashCode，只改变长度
+        String longer = "\0" + NEGATIVE_HASH;
+        assertThat(NEGATIVE_HASH.hashCode()).isNegative();
+        assertThat(longer.hashCode()).isEqualTo(NEGATIVE_HASH.hashCode());
+
+        assertThat(of(longer)).isNotEqualTo(of(NEGATIVE_HASH));
+    }
+
+    @Test
+    void stringsWithSameHashCodeAndLengthDiffer() {
+        // "Aa" 与 "BB" 的 hashCode 相同
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        assertThat(of("Aa")).isNotEqualTo(of("BB"));
+        assertThat(of("多云转小雪")).isNotEqualTo(of("多云转小雨"));
+    }
+
+    @Test
+    void equalContentHasEqualFingerprint() {
+        assertThat(of(new String("多云转小雪"))).isEqualTo(of("多云转小雪"));
+        assertThat(of("")).isNotEqualTo(of((String) null));
+    }
+
+    @Test
+    void fieldOrderMatters() {
+        assertThat(new Fingerprint().add("a").add("b").value())
+                .isNotEqualTo(new Fingerprint().add("b").add("a").value());
+        assertThat(new Fingerprint().add("ab").add("").value())
+                .isNotEqualTo(new Fingerprint().add("a").add("b").value());
+    }
+
+    @Test
+    void zeroAndNanAreNormalized() {
+        assertThat(new Fingerprint().add(-0.0).value()).isEqualTo(new Fingerprint().add(0.0).value());
+        assertThat(new Fingerprint().add(Double.NaN).value())
+                .isEqualTo(new Fingerprint().add(Double.longBitsToDouble(0x7FF8000000000001L)).value());
+    }
+
+    private static long of(String value) {
+        return new Fingerprint().add(value).value();
+    }
+}
@@ -0,0 +1,143 @@
+package com.hikarukimi.taimountain.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * HazardEngine 批量判定与 Utils 单值判定的一致性，以及 Vector API 实现与标量实现的一致性。
+ * <p>
+ * 数据在阈值附近取值（恰好等于阈值和相邻的 double），长度不是 64 的整数倍，覆盖位图字的尾部。
+ * Vector API 实现只在使用 -Pvector 构建时运行。
+ *
+ * @author Hikarukimi
+ */
+class HazardEngineTest {
+
+    private static final int LENGTH = 64 * 3 + 37;
+
+    private static final double[] TEMPS = edges(-12.0, -10.0, -2.0, 0.0, 1.0, 5.0);
+    private static final double[] HUMIDITIES = edges(60.0, 70.0, 80.0, 95.0);
+    private static final double[] WINDS = edges(0.5, 1.0, 3.0, 11.0, 14.0, 17.0, 20.0);
+    private static final double[] CLOUD_COVERS = edges(50.0, 70.0, 90.0, 100.0);
+    private static final double[] RAINS = edges(0.0, 10.0, 12.0);
+
+    @Test
+    void scalarMatchesUtils() {
+        Columns columns = Columns.random(new Random(42));
+        HazardMasks masks = new HazardMasks(LENGTH);
+
+        HazardEngine.scalar().evaluate(columns.temp, columns.rh, columns.dewPt, columns.windSpd,
+                columns.cloudCover, columns.rainAmount, LENGTH, masks);
+
+        for (int i = 0; i < LENGTH; i++) {
+            double t = columns.temp[i];
+            double h = columns.rh[i];
+            double d = columns.dewPt[i];
+            double w = columns.windSpd[i];
+            double c = columns.cloudCover[i];
+            double r = columns.rainAmount[i];
+            assertThat(masks.isRime(i)).as("rime at %d", i).isEqualTo(Utils.isRime(t, h, d, w, c));
+            assertThat(masks.isFreezingRain(i)).as("freezing rain at %d", i).isEqualTo(Utils.isFreezingRain(t, r, h, d, c));
+            assertThat(masks.isSeaOfClouds(i)).as("sea of clouds at %d", i).isEqualTo(Utils.isSeaOfClouds(c));
+            assertThat(masks.isBlizzard(i)).as("blizzard at %d", i).isEqualTo(Utils.isBlizzard(r, w, h, t));
+            assertThat(masks.isFreezing(i)).as("freezing at %d", i).isEqualTo(Utils.isFreezing(t, d, h));
+            assertThat(masks.getWindLevel(i)).as("wind level at %d", i).isEqualTo(Utils.evaluateWindLevel(w));
+        }
+    }
+
+    @Test
+    void utilsMatchesDocumentedThresholds() {
+        assertThat(Utils.isRime(-10.0, 70, -10.0, 1.0, 90)).isTrue();
+        assertThat(Utils.isRime(0.0, 70, 2.0, 3.0, 90)).isTrue();
+        assertThat(Utils.isRime(0.0, 70, 2.0, 3.0, 89.9)).isFalse();
+        assertThat(Utils.isFreezingRain(-0.1, 0.1, 70, -2.0, 90)).isTrue();
+        assertThat(Utils.isFreezingRain(0.0, 0.1, 70, 0.0, 90)).isFalse();
+        assertThat(Utils.isSeaOfClouds(70)).isFalse();
+        assertThat(Utils.isBlizzard(10.1, 17, 80, -0.1)).isTrue();
+        assertThat(Utils.isBlizzard(10.0, 17, 80, -0.1)).isFalse();
+        assertThat(Utils.isFreezing(0.0, 0.0, 70.1)).isTrue();
+        assertThat(Utils.isFreezing(0.0, 0.0, 70.0)).isFalse();
+    }
+
+    @Test
+    void vectorMatchesScalar() {
+        assumeTrue(HazardEngine.isVectorAvailable(), "built without -Pvector");
+        HazardEngine vector = HazardEngine.vector();
+        Random random = new Random(7);
+        for (int round = 0; round < 20; round++) {
+            Columns columns = Columns.random(random);
+            // 长度覆盖不足一个向量宽度、整字和带尾部的情况
+            int length = 1 + random.nextInt(LENGTH);
+            HazardMasks expected = new HazardMasks(length);
+            HazardMasks actual = new HazardMasks(length);
+
+            HazardEngine.scalar().evaluate(columns.temp, columns.rh, columns.dewPt, columns.windSpd,
+                    columns.cloudCover, columns.rainAmount, length, expected);
+            vector.evaluate(columns.temp, columns.rh, columns.dewPt, columns.windSpd,
+                    columns.cloudCover, columns.rainAmount, length, actual);
+
+            assertThat(actual.rime).isEqualTo(expected.rime);
+            assertThat(actual.freezingRain).isEqualTo(expected.freezingRain);
+            assertThat(actual.seaOfClouds).isEqualTo(expected.seaOfClouds);
+            assertThat(actual.blizzard).isEqualTo(expected.blizzard);
+            assertThat(actual.freezing).isEqualTo(expected.freezing);
+            assertThat(actual.windLevel).isEqualTo(expected.windLevel);
+        }
+    }
+
+    @Test
+    void rejectsShortArrays() {
+        Columns columns = Columns.random(new Random(1));
+
+        assertThatThrownBy(() -> HazardEngine.scalar().evaluate(columns.temp, columns.rh, columns.dewPt,
+                columns.windSpd, columns.cloudCover, columns.rainAmount, LENGTH + 1, new HazardMasks(LENGTH + 1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 每个阈值本身及其前后相邻的 double。
+     */
+    private static double[] edges(double... thresholds) {
+        double[] values = new double[thresholds.length * 3];
+        for (int i = 0; i < thresholds.length; i++) {
+            values[i * 3] = Math.nextDown(thresholds[i]);
+            values[i * 3 + 1] = thresholds[i];
+            values[i * 3 + 2] = Math.nextUp(thresholds[i]);
+        }
+        return values;
+    }
+
+    private static final class Columns {
+
+        final double[] temp = new double[LENGTH];
+        final double[] rh = new double[LENGTH];
+        final double[] dewPt = new double[LENGTH];
+        final double[] windSpd = new double[LENGTH];
+        final double[] cloudCover = new double[LENGTH];
+        final double[] rainAmount = new double[LENGTH];
+
+        static Columns random(Random random) {
+            Columns columns = new Columns();
+            for (int i = 0; i < LENGTH; i++) {
+                double t = pick(random, TEMPS);
+                columns.temp[i] = t;
+                columns.rh[i] = pick(random, HUMIDITIES);
+                // 露点落在气温 ±2 的边界附近或远离气温
+                columns.dewPt[i] = pick(random, edges(t - 2, t, t + 2, t - 5));
+                columns.windSpd[i] = pick(random, WINDS);
+                columns.cloudCover[i] = pick(random, CLOUD_COVERS);
+                columns.rainAmount[i] = pick(random, RAINS);
+            }
+            return columns;
+        }
+
+        private static double pick(Random random, double[] values) {
+            return values[random.nextInt(values.length)];
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.hikarukimi.taimountain.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * PayloadEnvelope 在原始字节上定位 JSON 对象。
+ *
+ * @author Hikarukimi
+ */
+class PayloadEnvelopeTest {
+
+    private static final String DATA_SK = "{\"nameen\":\"taishan\",\"cityname\":\"泰山\",\"temp\":\"12.3\",\"WD\":\"东北风\",\"time\":\"08:00\"}";
+
+    @Test
+    void varAssignmentFromUpstream() {
+        assertThat(var("var dataSK = " + DATA_SK + ";")).isEqualTo(DATA_SK);
+        assertThat(var("var dataSK=" + DATA_SK)).isEqualTo(DATA_SK);
+    }
+
+    @Test
+    void varAssignmentInsideScriptTag() {
+        String body = "<html><head><script type=\"text/javascript\">var dataSK = " + DATA_SK + ";</script></head></html>";
+
+        assertThat(var(body)).isEqualTo(DATA_SK);
+    }
+
+    @Test
+    void varAssignmentRespectsBufferPosition() {
+        byte[] bytes = ("garbage}var dataSK = " + DATA_SK + ";").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.wrap(bytes).position("garbage}".length());
+
+        assertThat(decode(PayloadEnvelope.VAR_ASSIGNMENT.unwrap(body))).isEqualTo(DATA_SK);
+    }
+
+    @Test
+    void missingEqualsIsRejected() {
+        assertThatThrownBy(() -> var("var dataSK " + DATA_SK + ";")).isInstanceOf(IllegalArgumentException.class);
+        // '=' 必须与 var 在同一行
+        assertThatThrownBy(() -> var("var dataSK\n= " + DATA_SK + ";")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> var("var")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void missingBraceIsRejected() {
+        assertThatThrownBy(() -> var("var dataSK = [1, 2];")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> var("var dataSK = {\"temp\":\"12.3\"")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> var("")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void multiLineBodyUsesFirstObjectAssignment() {
+        String body = "var count = 1;\n"
+                + "var dataSK = " + DATA_SK + ";\n"
+                + "var other = {\"a\":1};\n"
+                + "function f() { return 1; }\n";
+
+        // JSON 对象到同一行最后一个 '}' 结束，不跨越到后续行
+        assertThat(var(body)).isEqualTo(DATA_SK);
+        assertThat(var("var dataSK =\r\n" + DATA_SK + "\r\n}")).isEqualTo(DATA_SK);
+    }
+
+    @Test
+    void varInsideIdentifierOrStringIsIgnored() {
+        String tail = "var dataSK = " + DATA_SK + ";";
+
+        assertThat(var("variable = {\"a\":1};\n" + tail)).isEqualTo(DATA_SK);
+        assertThat(var("avar x = {\"a\":1};\n" + tail)).isEqualTo(DATA_SK);
+        assertThat(var("$var x = {\"a\":1};\n" + tail)).isEqualTo(DATA_SK);
+        assertThat(var("s = {\"var\":1};\n" + tail)).isEqualTo(DATA_SK);
+        assertThatThrownBy(() -> var("variable = {\"a\":1};")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> var("泰var x = {\"a\":1};")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void scriptTag() {
+        PayloadEnvelope envelope = PayloadEnvelope.scriptTag("application/json");
+        String body = "<div></div><script type=\"application/json\">" + DATA_SK + "</script><script></script>";
+
+        assertThat(decode(envelope.unwrap(utf8(body)))).isEqualTo(DATA_SK);
+        assertThatThrownBy(() -> envelope.unwrap(utf8("<script type=\"application/json\">" + DATA_SK)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> envelope.unwrap(utf8("<script>" + DATA_SK + "</script>")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String var(String body) {
+        return decode(PayloadEnvelope.VAR_ASSIGNMENT.unwrap(utf8(body)));
+    }
+
+    private static ByteBuffer utf8(String body) {
+        return ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(ByteBuffer json) {
+        return StandardCharsets.UTF_8.decode(json).toString();
+    }
+}